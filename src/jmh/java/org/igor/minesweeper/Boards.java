@@ -0,0 +1,72 @@
+package org.igor.minesweeper;
+
+import java.util.*;
+
+/**
+ * Fixed, seeded boards for the benchmarks, along with a mid-game reveal state
+ */
+class Boards {
+
+    static class Board {
+        final Minesweeper minesweeper;
+        final Map<Integer, Integer> revealed;
+
+        Board(Minesweeper minesweeper, Map<Integer, Integer> revealed) {
+            this.minesweeper = minesweeper;
+            this.revealed = revealed;
+        }
+    }
+
+    /**
+     * @param level beginner (9x9/10), intermediate (16x16/40), expert (16x30/99), or fixture, the
+     *              10x10 reveal state of MinesweeperTest.testRegenerateExhaustive
+     */
+    static Board board(String level, long seed) {
+        switch (level){
+            case "beginner":
+                return random(9, 9, 10, seed);
+            case "intermediate":
+                return random(16, 16, 40, seed);
+            case "expert":
+                return random(16, 30, 99, seed);
+            case "fixture":
+                return fixture();
+            default:
+                throw new IllegalArgumentException(level);
+        }
+    }
+
+    private static Board random(int dimX, int dimY, int numOfMines, long seed) {
+        Minesweeper minesweeper = new Minesweeper(dimX, dimY, numOfMines, new SplittableRandom(seed));
+
+        // open empty regions in a seeded order until about a third of the board is revealed
+        List<Integer> positions = new ArrayList<>();
+        for (int pos = 0; pos < dimX * dimY; pos++){
+            positions.add(pos);
+        }
+        Collections.shuffle(positions, new Random(seed));
+        Map<Integer, Integer> revealed = new TreeMap<>();
+        long[] opened = new long[Minesweeper.words(minesweeper.getDimTotal())];
+        for (int pos : positions){
+            if (revealed.size() >= minesweeper.getDimTotal() / 3){
+                break;
+            }
+            if (minesweeper.getNumberOfAdjacentMines(pos) == 0){
+                revealed.putAll(minesweeper.reveal(pos, opened).toMap());
+            }
+        }
+        return new Board(minesweeper, revealed);
+    }
+
+    private static Board fixture() {
+        Minesweeper minesweeper = new Minesweeper(10, 10, 10, new int[]{7, 18, 35, 39, 44, 49, 54, 63, 81, 84});
+        int[] unopened = {7, 8, 9, 17, 18, 19, 29, 35, 39, 44, 49, 54, 63, 64, 73, 74, 80, 81, 82, 83, 84, 90, 91, 92, 93, 94};
+        Map<Integer, Integer> revealed = new TreeMap<>();
+        for (int pos = 0; pos < 100; pos++){
+            if (Arrays.binarySearch(unopened, pos) < 0){
+                revealed.put(pos, minesweeper.getNumberOfAdjacentMines(pos));
+            }
+        }
+        return new Board(minesweeper, revealed);
+    }
+}
@@ -0,0 +1,81 @@
+package org.igor.minesweeper;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MinesweeperBenchmark {
+
+    @Param({"beginner", "intermediate", "expert", "fixture"})
+    public String level;
+
+    @Param("42")
+    public long seed;
+
+    private Minesweeper minesweeper;
+    private RevealedState revealed;
+    private SplittableRandom random;
+    /** a box with no mines around it */
+    private int zero;
+
+    @Setup
+    public void setup() {
+        random = new SplittableRandom(seed);
+        Boards.Board board = Boards.board(level, seed);
+        minesweeper = board.minesweeper;
+        revealed = RevealedState.of(minesweeper.getDimTotal(), board.revealed).snapshot();
+        while (zero < minesweeper.getDimTotal() - 1 && minesweeper.getNumberOfAdjacentMines(zero) != 0){
+            zero++;
+        }
+    }
+
+    @Benchmark
+    public long[] init() {
+        return Minesweeper.init(minesweeper.getDimX(), minesweeper.getDimY(), minesweeper.getNumOfMines(), null, random);
+    }
+
+    @Benchmark
+    public long[] initRevealed() {
+        return Minesweeper.init(minesweeper.getDimX(), minesweeper.getDimY(), minesweeper.getNumOfMines(), revealed, random);
+    }
+
+    @Benchmark
+    public int adjacent() {
+        int sum = 0;
+        for (int pos = 0; pos < minesweeper.getDimTotal(); pos++){
+            for (int i = minesweeper.neighborOffsets[pos]; i < minesweeper.neighborOffsets[pos + 1]; i++){
+                sum += minesweeper.neighbors[i];
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int numberOfAdjacentMines() {
+        int sum = 0;
+        for (int pos = 0; pos < minesweeper.getDimTotal(); pos++){
+            sum += minesweeper.getNumberOfAdjacentMines(pos);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return minesweeper.matches(revealed, minesweeper.minePositions);
+    }
+
+    /**
+     * A click on a box with no mines around it, flood filling its region
+     */
+    @Benchmark
+    public Minesweeper.Reveal reveal() {
+        return minesweeper.reveal(zero, new long[Minesweeper.words(minesweeper.getDimTotal())]);
+    }
+}
@@ -0,0 +1,119 @@
+package org.igor.minesweeper;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The probability engines, on a mid-game reveal state
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SolverBenchmark {
+
+    @Param({"beginner", "intermediate", "expert", "fixture"})
+    public String level;
+
+    @Param("42")
+    public long seed;
+
+    private Minesweeper minesweeper;
+    private RevealedState revealed;
+    private SamplePool prior;
+    /** samples that all match revealed, which retain has to check through every constraint */
+    private SamplePool matching;
+
+    @Setup
+    public void setup() {
+        Boards.Board board = Boards.board(level, seed);
+        minesweeper = board.minesweeper;
+        revealed = RevealedState.of(minesweeper.getDimTotal(), board.revealed).snapshot();
+        SplittableRandom random = new SplittableRandom(seed);
+        prior = new SamplePool(minesweeper, 10_000);
+        for (int i = 0; i < 10_000; i++){
+            prior.add(Minesweeper.init(minesweeper.getDimX(), minesweeper.getDimY(), minesweeper.getNumOfMines(), null, random));
+        }
+        matching = new SamplePool(minesweeper, 100_000);
+        matching.addAll(new ConstrainedSampler(minesweeper, revealed, new SplittableRandom(seed)).sample(100_000, () -> false).plans);
+    }
+
+    @Benchmark
+    public double[] frontierSolver() {
+        return new FrontierSolver(minesweeper).solve(revealed);
+    }
+
+    /**
+     * regenerateBySampling: 1000 constraint-guided draws
+     */
+    @Benchmark
+    public MineCounts constrainedSampling() {
+        MineCounts counts = new MineCounts(minesweeper.getDimTotal());
+        new ConstrainedSampler(minesweeper, revealed, new SplittableRandom(seed)).sample(1_000, counts, () -> false);
+        return counts;
+    }
+
+    /**
+     * The filtering done by open() on 10,000 prior samples, including the copy of the pool
+     */
+    @Benchmark
+    public SamplePool retain() {
+        SamplePool pool = prior.copy();
+        pool.retain(revealed);
+        return pool;
+    }
+
+    /**
+     * Checking every revealed box against 100,000 samples that match them all
+     */
+    @Benchmark
+    public boolean validate() {
+        return matching.retain(revealed);
+    }
+
+    /**
+     * test() on 10,000 samples
+     */
+    @Benchmark
+    public double[] marginals() {
+        return prior.marginals();
+    }
+
+    /**
+     * regenerateExhaustivelly, on its own levels: it is only practical on the fixture
+     */
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    @State(Scope.Benchmark)
+    public static class Exhaustive {
+
+        @Param("fixture")
+        public String level;
+
+        @Param("42")
+        public long seed;
+
+        private Minesweeper minesweeper;
+        private RevealedState revealed;
+
+        @Setup
+        public void setup() {
+            Boards.Board board = Boards.board(level, seed);
+            minesweeper = board.minesweeper;
+            revealed = RevealedState.of(minesweeper.getDimTotal(), board.revealed).snapshot();
+        }
+
+        @Benchmark
+        public MineCounts exhaustive() {
+            return new ExhaustiveEnumerator(minesweeper, revealed, () -> false).enumerate(ForkJoinPool.commonPool());
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package org.igor.minesweeper;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Solutions of frontier components, so that a pattern met before is not enumerated again.
+ *
+ * The solutions only depend on which boxes each number constrains, not on where the component
+ * lies. A component is keyed by its constraints over its boxes numbered in a canonical order: the
+ * boxes are sorted by their coordinates under each of the 8 rotations and reflections of the
+ * board, and the transform giving the smallest encoding is kept. Translated, rotated and
+ * mirrored copies of a pattern thus share an entry.
+ *
+ * Entries are evicted least recently used first, once their estimated heap size goes over a budget
+ * in bytes: an entry grows with the square of the size of its component, so a count of entries
+ * says little about memory. The cache can be saved to and loaded from a memory-mapped file.
+ */
+public class ComponentCache {
+    private static final int MAGIC = 0x4d534343;
+    /** header of an array on the heap, padding included */
+    private static final long ARRAY_BYTES = 16;
+    /** the map node, the key, the entry and the headers of their arrays */
+    private static final long ENTRY_BYTES = 160;
+
+    /**
+     * The canonical encoding of a component: number of boxes, number of constraints, then for each
+     * constraint its mines, its size and its boxes
+     */
+    static final class Key {
+        final int[] code;
+        private final int hash;
+
+        Key(int[] code) {
+            this.code = code;
+            this.hash = Arrays.hashCode(code);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(code, ((Key) o).code);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The solutions of a component, with its boxes in canonical order
+     */
+    static final class Entry {
+        final long[] solutions;
+        final long[][] mineCounts;
+
+        Entry(long[] solutions, long[][] mineCounts) {
+            this.solutions = solutions;
+            this.mineCounts = mineCounts;
+        }
+    }
+
+    /** in access order, least recently used first */
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxBytes how much heap the entries may take, as estimated by {@link #bytes(Key, Entry)}
+     */
+    public ComponentCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated heap size of the entries
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the estimated heap size of an entry: the key code, the solution counts and the mine
+     * counts per number of mines, along with the objects holding them
+     */
+    static long bytes(Key key, Entry entry) {
+        int n = entry.solutions.length - 1;
+        return ENTRY_BYTES + 4L * key.code.length + 8L * (n + 1) + (n + 1) * (ARRAY_BYTES + 8L * n);
+    }
+
+    /**
+     * Adds the entry, then evicts the least recently used ones until the entries fit the budget
+     */
+    private synchronized void put(Key key, Entry entry) {
+        Entry replaced = entries.put(key, entry);
+        if (replaced != null){
+            bytes -= bytes(key, replaced);
+        }
+        bytes += bytes(key, entry);
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()){
+            Map.Entry<Key, Entry> e = eldest.next();
+            bytes -= bytes(e.getKey(), e.getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Fills in the solutions of the component, from the cache if an equivalent one was solved before
+     * @param dimY of the board the component is on, to get the coordinates of its boxes
+     */
+    public void enumerate(FrontierSolver.Component component, int dimY) {
+        int[] order = new int[component.positions.length];
+        Key key = key(component, dimY, order);
+        Entry entry;
+        synchronized (this){
+            entry = entries.get(key);
+        }
+        int n = order.length;
+        if (entry != null){
+            hits.incrementAndGet();
+            component.solutions = entry.solutions.clone();
+            component.mineCounts = new long[n + 1][n];
+            for (int k = 0; k <= n; k++){
+                for (int j = 0; j < n; j++){
+                    component.mineCounts[k][order[j]] = entry.mineCounts[k][j];
+                }
+            }
+            return;
+        }
+        misses.incrementAndGet();
+        FrontierSolver.enumerate(component);
+        long[][] mineCounts = new long[n + 1][n];
+        for (int k = 0; k <= n; k++){
+            for (int j = 0; j < n; j++){
+                mineCounts[k][j] = component.mineCounts[k][order[j]];
+            }
+        }
+        put(key, new Entry(component.solutions.clone(), mineCounts));
+    }
+
+    /**
+     * @return true if the component, or an equivalent one, is cached
+     */
+    public boolean contains(FrontierSolver.Component component, int dimY) {
+        Key key = key(component, dimY, new int[component.positions.length]);
+        synchronized (this){
+            return entries.containsKey(key);
+        }
+    }
+
+    /**
+     * @param order receives, for each canonical index, the index of the box in the component
+     */
+    static Key key(FrontierSolver.Component component, int dimY, int[] order) {
+        int n = component.positions.length;
+        int[] best = null;
+        Integer[] boxes = new Integer[n];
+        int[] tx = new int[n];
+        int[] ty = new int[n];
+        int[] canonical = new int[n];
+        for (int t = 0; t < 8; t++){
+            for (int i = 0; i < n; i++){
+                int x = component.positions[i] / dimY;
+                int y = component.positions[i] % dimY;
+                // t bit 0: swap the axes, bit 1: mirror x, bit 2: mirror y
+                int a = (t & 1) == 0 ? x : y;
+                int b = (t & 1) == 0 ? y : x;
+                tx[i] = (t & 2) == 0 ? a : -a;
+                ty[i] = (t & 4) == 0 ? b : -b;
+                boxes[i] = i;
+            }
+            Arrays.sort(boxes, (i, j) -> tx[i] != tx[j] ? Integer.compare(tx[i], tx[j]) : Integer.compare(ty[i], ty[j]));
+            for (int j = 0; j < n; j++){
+                canonical[boxes[j]] = j;
+            }
+            int[] code = encode(component, canonical);
+            if (best == null || compare(code, best) < 0){
+                best = code;
+                for (int j = 0; j < n; j++){
+                    order[j] = boxes[j];
+                }
+            }
+        }
+        return new Key(best);
+    }
+
+    private static int[] encode(FrontierSolver.Component component, int[] canonical) {
+        List<int[]> constraints = new ArrayList<>();
+        int length = 2;
+        for (FrontierSolver.Constraint constraint : component.constraints){
+            int[] c = new int[constraint.cells.length + 2];
+            c[0] = constraint.mines;
+            c[1] = constraint.cells.length;
+            for (int i = 0; i < constraint.cells.length; i++){
+                c[i + 2] = canonical[constraint.cells[i]];
+            }
+            Arrays.sort(c, 2, c.length);
+            constraints.add(c);
+            length += c.length;
+        }
+        constraints.sort(ComponentCache::compare);
+        int[] code = new int[length];
+        code[0] = component.positions.length;
+        code[1] = constraints.size();
+        int offset = 2;
+        for (int[] c : constraints){
+            System.arraycopy(c, 0, code, offset, c.length);
+            offset += c.length;
+        }
+        return code;
+    }
+
+    private static int compare(int[] a, int[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++){
+            if (a[i] != b[i]){
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    /**
+     * Writes the entries to file through a memory mapping, least recently used first
+     */
+    public void save(Path file) throws IOException {
+        List<Map.Entry<Key, Entry>> snapshot;
+        synchronized (this){
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        long bytes = 8;
+        for (Map.Entry<Key, Entry> e : snapshot){
+            int n = e.getValue().solutions.length - 1;
+            bytes += 4 + 4L * e.getKey().code.length + 8L * (n + 1) * (n + 1);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            buffer.putInt(MAGIC).putInt(snapshot.size());
+            for (Map.Entry<Key, Entry> e : snapshot){
+                int[] code = e.getKey().code;
+                buffer.putInt(code.length);
+                for (int i : code){
+                    buffer.putInt(i);
+                }
+                Entry entry = e.getValue();
+                for (long s : entry.solutions){
+                    buffer.putLong(s);
+                }
+                for (long[] counts : entry.mineCounts){
+                    for (long c : counts){
+                        buffer.putLong(c);
+                    }
+                }
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * Adds the entries saved in file, if it exists
+     * @throws IOException if it is not a saved cache
+     */
+    public void load(Path file) throws IOException {
+        if (!Files.exists(file)){
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC){
+                throw new IOException("Not a component cache: " + file);
+            }
+            int size = buffer.getInt();
+            for (int e = 0; e < size; e++){
+                int[] code = new int[buffer.getInt()];
+                for (int i = 0; i < code.length; i++){
+                    code[i] = buffer.getInt();
+                }
+                int n = code[0];
+                long[] solutions = new long[n + 1];
+                for (int k = 0; k <= n; k++){
+                    solutions[k] = buffer.getLong();
+                }
+                long[][] mineCounts = new long[n + 1][n];
+                for (long[] counts : mineCounts){
+                    for (int j = 0; j < n; j++){
+                        counts[j] = buffer.getLong();
+                    }
+                }
+                put(new Key(code), new Entry(solutions, mineCounts));
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.igor.minesweeper;
+
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Generates mine plans that match the revealed boxes by construction.
+ *
+ * The frontier boxes (unopened boxes next to a revealed number) are assigned one at a time. Before
+ * each assignment both values are checked for whether they can still be extended to a full solution,
+ * and one of the feasible values is picked uniformly. The remaining mines are then spread uniformly
+ * over the interior. Such a draw is never rejected, but it is not uniform over the solutions, so
+ * each plan carries an importance weight: the number of interior placements times the number of
+ * choices that were available along the way.
+ */
+public class ConstrainedSampler {
+
+    /**
+     * A batch of plans along with their (log) importance weights
+     */
+    public static class Batch {
+        public final List<long[]> plans = new ArrayList<>();
+        public final List<Double> logWeights = new ArrayList<>();
+
+        /**
+         * @return the log weights, shifted so that they average to 1. Plans of batches drawn for
+         * different moves can then be mixed, each batch weighing by its number of plans
+         */
+        public List<Double> normalizedLogWeights() {
+            double max = logWeights.stream().mapToDouble(Double::doubleValue).max().orElse(0);
+            double logMean = max + Math.log(logWeights.stream().mapToDouble(w -> Math.exp(w - max)).sum() / logWeights.size());
+            List<Double> ret = new ArrayList<>(logWeights.size());
+            logWeights.forEach(w -> ret.add(w - logMean));
+            return ret;
+        }
+    }
+
+    private final int dimTotal;
+    private final SplittableRandom random;
+    private final long[] knownMines;
+    private final int minesAvailable;
+
+    private final int[] frontier;
+    private final int[][] constraintsOf;
+    private final int[] need;
+    private final int[] unassigned;
+    private final int[] interior;
+    /** logInteriorWays[m]: log of the number of ways to place the mines left by m frontier mines in the interior */
+    private final double[] logInteriorWays;
+
+    private final int[] witness;
+    private final int[] trial;
+
+    /**
+     * @param random not shared with other threads
+     */
+    public ConstrainedSampler(Minesweeper minesweeper, Map<Integer, Integer> revealed, SplittableRandom random) {
+        this(minesweeper, RevealedState.of(minesweeper.getDimTotal(), revealed), random);
+    }
+
+    /**
+     * @param random not shared with other threads
+     */
+    public ConstrainedSampler(Minesweeper minesweeper, RevealedState revealed, SplittableRandom random) {
+        this.dimTotal = minesweeper.getDimTotal();
+        this.random = random;
+
+        knownMines = revealed.flagged.clone();
+        minesAvailable = minesweeper.getNumOfMines() - revealed.getMinesFound();
+
+        // Components are laid out one after the other, so that each is completed before the next starts
+        List<FrontierSolver.Component> components = new FrontierSolver(minesweeper).components(revealed);
+        int n = components.stream().mapToInt(c -> c.positions.length).sum();
+        frontier = new int[n];
+        List<FrontierSolver.Constraint> constraints = new ArrayList<>();
+        int offset = 0;
+        for (FrontierSolver.Component component : components){
+            System.arraycopy(component.positions, 0, frontier, offset, component.positions.length);
+            for (FrontierSolver.Constraint constraint : component.constraints){
+                int[] cells = constraint.cells.clone();
+                for (int i = 0; i < cells.length; i++){
+                    cells[i] += offset;
+                }
+                constraints.add(new FrontierSolver.Constraint(cells, constraint.mines));
+            }
+            offset += component.positions.length;
+        }
+        constraintsOf = FrontierSolver.Constraint.constraintsOf(constraints, n);
+        need = new int[constraints.size()];
+        unassigned = new int[constraints.size()];
+        FrontierSolver.Constraint.init(constraints, need, unassigned);
+
+        boolean[] onFrontier = new boolean[dimTotal];
+        Arrays.stream(frontier).forEach(pos -> onFrontier[pos] = true);
+        interior = IntStream.range(0, dimTotal).filter(pos -> !onFrontier[pos] && !revealed.isOpen(pos)).toArray();
+        logInteriorWays = new double[n + 1];
+        for (int k = 0; k <= n; k++){
+            logInteriorWays[k] = LogBinomial.log(interior.length, minesAvailable - k);
+        }
+
+        witness = new int[n];
+        trial = new int[n];
+        if (!extend(0, 0, witness)){
+            throw new IllegalStateException("No mine configuration matches the revealed boxes");
+        }
+    }
+
+    public Batch sample(int n, BooleanSupplier cancelled) {
+        Batch batch = new Batch();
+        for (int i = 0; i < n; i++){
+            if (cancelled.getAsBoolean()){
+                break;
+            }
+            long[] plan = knownMines.clone();
+            batch.logWeights.add(draw(plan));
+            batch.plans.add(plan);
+        }
+        return batch;
+    }
+
+    /**
+     * Folds n plans into counts as they are drawn, without keeping them
+     */
+    public void sample(int n, MineCounts counts, BooleanSupplier cancelled) {
+        long[] plan = new long[knownMines.length];
+        for (int i = 0; i < n; i++){
+            if (cancelled.getAsBoolean()){
+                break;
+            }
+            System.arraycopy(knownMines, 0, plan, 0, plan.length);
+            counts.accept(plan, draw(plan));
+        }
+    }
+
+    /**
+     * Fills in plan with one valid configuration
+     * @return the log of its importance weight
+     */
+    double draw(long[] plan) {
+        double logWeight = 0;
+        int mines = 0;
+        for (int i = 0; i < frontier.length; i++){
+            int value = witness[i];
+            int other = 1 - value;
+            boolean otherFeasible = false;
+            if (assign(i, other)){
+                otherFeasible = extend(i + 1, mines + other, trial);
+            }
+            unassign(i, other);
+            if (otherFeasible){
+                logWeight += Math.log(2);
+                if (random.nextBoolean()){
+                    value = other;
+                    System.arraycopy(trial, i + 1, witness, i + 1, frontier.length - i - 1);
+                    witness[i] = value;
+                }
+            }
+            assign(i, value);
+            mines += value;
+            if (value == 1){
+                plan[frontier[i] >>> 6] |= 1L << frontier[i];
+            }
+        }
+        for (int i = frontier.length - 1; i >= 0; i--){
+            unassign(i, witness[i]);
+        }
+
+        // partial Fisher-Yates over the interior
+        int interiorMines = minesAvailable - mines;
+        int[] positions = interior.clone();
+        for (int i = 0; i < interiorMines; i++){
+            int j = i + random.nextInt(positions.length - i);
+            int pos = positions[j];
+            positions[j] = positions[i];
+            positions[i] = pos;
+            plan[pos >>> 6] |= 1L << pos;
+        }
+        return logWeight + logInteriorWays[mines];
+    }
+
+    /**
+     * Assigns value to frontier[i]
+     * @return false if a constraint can no longer be met
+     */
+    private boolean assign(int i, int value) {
+        return FrontierSolver.Constraint.assign(constraintsOf[i], need, unassigned, value);
+    }
+
+    private void unassign(int i, int value) {
+        FrontierSolver.Constraint.unassign(constraintsOf[i], need, unassigned, value);
+    }
+
+    /**
+     * Depth first search for a solution of frontier[i..], given the current assignment of frontier[0..i)
+     * @param assignment receives the solution found
+     * @return true if there is one
+     */
+    private boolean extend(int i, int mines, int[] assignment) {
+        if (mines > minesAvailable || mines + frontier.length - i < minesAvailable - interior.length){
+            return false;
+        }
+        if (i == frontier.length){
+            return true;
+        }
+        int first = random.nextInt(2);
+        for (int k = 0; k < 2; k++){
+            int value = first ^ k;
+            boolean found = assign(i, value) && extend(i + 1, mines + value, assignment);
+            unassign(i, value);
+            if (found){
+                assignment[i] = value;
+                return true;
+            }
+        }
+        return false;
+    }
+}
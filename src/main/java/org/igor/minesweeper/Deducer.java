@@ -0,0 +1,147 @@
+package org.igor.minesweeper;
+
+import java.util.*;
+
+/**
+ * Finds the unopened boxes whose content follows from the revealed numbers by plain logic, without
+ * counting solutions:
+ * <ul>
+ * <li>single point: a number whose mines are all found makes the rest of its boxes safe, and one
+ * that needs as many mines as it has unknown boxes makes them all mines</li>
+ * <li>subset: when the unknown boxes of a number are a subset of the boxes of another, the boxes
+ * only the other one sees hold the difference of their mines</li>
+ * <li>global: when the mines left are none, or as many as the unknown boxes</li>
+ * </ul>
+ * The rules are applied until nothing new is found.
+ */
+public class Deducer {
+    /**
+     * Value of a box known to be safe whose number is not known yet. Revealed maps may hold it
+     * alongside the numbers and -1 for the mines
+     */
+    public static final int SAFE = -2;
+
+    private final Minesweeper minesweeper;
+
+    public Deducer(Minesweeper minesweeper) {
+        this.minesweeper = minesweeper;
+    }
+
+    /**
+     * @param revealed the boxes opened so far, -1 for a (known) mine
+     * @return the boxes not in revealed whose content is forced: -1 for a mine, {@link #SAFE} for a safe box
+     */
+    public Map<Integer, Integer> deduce(Map<Integer, Integer> revealed) {
+        return deduce(RevealedState.of(minesweeper.getDimTotal(), revealed)).toMap();
+    }
+
+    /**
+     * @param revealed the boxes opened so far, -1 for a (known) mine
+     * @return the boxes not in revealed whose content is forced: -1 for a mine, {@link #SAFE} for a safe box
+     */
+    public RevealedState deduce(RevealedState revealed) {
+        // the forced boxes are negative, so they add no constraint, only known boxes
+        RevealedState known = revealed.copy();
+        RevealedState ret = new RevealedState(minesweeper.getDimTotal());
+
+        boolean changed = true;
+        while (changed){
+            List<FrontierSolver.Constraint> constraints = FrontierSolver.Constraint.of(minesweeper, known);
+            constraints.removeIf(constraint -> constraint.cells.length == 0);
+            changed = singlePoint(constraints, known, ret)
+                    || subset(constraints, known, ret)
+                    || global(known, ret);
+        }
+        return ret;
+    }
+
+    private boolean singlePoint(List<FrontierSolver.Constraint> constraints, RevealedState known, RevealedState ret) {
+        boolean changed = false;
+        for (FrontierSolver.Constraint constraint : constraints){
+            changed |= force(constraint.cells, constraint.mines, known, ret);
+        }
+        return changed;
+    }
+
+    private boolean subset(List<FrontierSolver.Constraint> constraints, RevealedState known, RevealedState ret) {
+        Map<Integer, List<FrontierSolver.Constraint>> byCell = new HashMap<>();
+        for (FrontierSolver.Constraint constraint : constraints){
+            for (int cell : constraint.cells){
+                byCell.computeIfAbsent(cell, c -> new ArrayList<>()).add(constraint);
+            }
+        }
+        boolean changed = false;
+        for (FrontierSolver.Constraint a : constraints){
+            // a superset of a has to contain its first cell
+            for (FrontierSolver.Constraint b : byCell.get(a.cells[0])){
+                if (b.cells.length <= a.cells.length){
+                    continue;
+                }
+                int[] diff = difference(b.cells, a.cells);
+                if (diff != null){
+                    changed |= force(diff, b.mines - a.mines, known, ret);
+                }
+            }
+        }
+        return changed;
+    }
+
+    private boolean global(RevealedState known, RevealedState ret) {
+        int[] unknown = new int[known.getAvailable()];
+        int cnt = 0;
+        for (int pos = 0; pos < minesweeper.getDimTotal(); pos++){
+            if (!known.isOpen(pos)){
+                unknown[cnt++] = pos;
+            }
+        }
+        return cnt > 0 && force(unknown, minesweeper.getNumOfMines() - known.getMinesFound(), known, ret);
+    }
+
+    /**
+     * Marks cells as all safe if mines is 0, as all mines if mines equals their number
+     * @return true if any of them was not known before
+     */
+    private static boolean force(int[] cells, int mines, RevealedState known, RevealedState ret) {
+        int value;
+        if (mines == 0){
+            value = SAFE;
+        }else if (mines == cells.length){
+            value = -1;
+        }else{
+            return false;
+        }
+        boolean changed = false;
+        for (int cell : cells){
+            if (!known.isOpen(cell)){
+                known.put(cell, value);
+                ret.put(cell, value);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param a sorted
+     * @param b sorted
+     * @return the cells of a that are not in b, null if b is not a subset of a
+     */
+    static int[] difference(int[] a, int[] b) {
+        int[] ret = new int[a.length - b.length];
+        int i = 0, j = 0, cnt = 0;
+        while (i < a.length){
+            if (j < b.length && a[i] == b[j]){
+                i++;
+                j++;
+            }else if (j < b.length && a[i] > b[j]){
+                return null;
+            }else{
+                if (cnt == ret.length){
+                    return null;
+                }
+                ret[cnt++] = a[i++];
+            }
+        }
+        return j == b.length ? ret : null;
+    }
+}
@@ -0,0 +1,165 @@
+package org.igor.minesweeper;
+
+import org.apache.commons.math3.util.CombinatoricsUtils;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Goes through every placement of the remaining mines over the unopened boxes, in parallel.
+ *
+ * Combinations are enumerated in lexicographic order, so the space is split by prefix: a task that
+ * has chosen the first d mines forks one subtask per choice of the next mine, until the
+ * combinations left under a prefix are few enough to walk sequentially. Each task keeps the mine
+ * count of every revealed number up to date as mines are placed and removed, so checking a
+ * combination allocates nothing. Matching combinations are folded into per position counts.
+ */
+public class ExhaustiveEnumerator {
+    static final double SEQUENTIAL_THRESHOLD = 50_000;
+
+    private final int dimTotal;
+    private final int[] available;
+    private final int mines;
+    private final int[] knownMines;
+    /** constraintsOf[i]: the revealed numbers next to available[i] */
+    private final int[][] constraintsOf;
+    private final int[] need;
+    private final BooleanSupplier cancelled;
+
+    public ExhaustiveEnumerator(Minesweeper minesweeper, Map<Integer, Integer> revealed, BooleanSupplier cancelled) {
+        this(minesweeper, RevealedState.of(minesweeper.getDimTotal(), revealed), cancelled);
+    }
+
+    public ExhaustiveEnumerator(Minesweeper minesweeper, RevealedState revealed, BooleanSupplier cancelled) {
+        this.dimTotal = minesweeper.getDimTotal();
+        this.cancelled = cancelled;
+        available = new int[revealed.getAvailable()];
+        knownMines = new int[revealed.getMinesFound()];
+        for (int pos = 0, a = 0, k = 0; pos < dimTotal; pos++){
+            if (!revealed.isOpen(pos)){
+                available[a++] = pos;
+            }else if (revealed.isFlagged(pos)){
+                knownMines[k++] = pos;
+            }
+        }
+        mines = minesweeper.getNumOfMines() - knownMines.length;
+
+        // numbers with no unopened box around them are kept: one that misses mines matches nothing
+        List<FrontierSolver.Constraint> constraints = FrontierSolver.Constraint.of(minesweeper, revealed);
+        need = constraints.stream().mapToInt(constraint -> constraint.mines).toArray();
+        int[][] constraintsOfPos = FrontierSolver.Constraint.constraintsOf(constraints, dimTotal);
+        constraintsOf = Arrays.stream(available).mapToObj(pos -> constraintsOfPos[pos]).toArray(int[][]::new);
+    }
+
+    /**
+     * @return the number of combinations to go through
+     */
+    public double combinations() {
+        return CombinatoricsUtils.binomialCoefficientDouble(available.length, mines);
+    }
+
+    /**
+     * @throws CancellationException if cancelled becomes true while enumerating
+     */
+    public MineCounts enumerate(ForkJoinPool pool) {
+        if (mines < 0 || mines > available.length){
+            return new MineCounts(dimTotal);
+        }
+        int satisfied = (int) Arrays.stream(need).filter(n -> n == 0).count();
+        MineCounts ret = pool.invoke(new Task(0, new int[mines], new int[need.length], satisfied));
+        for (int pos : knownMines){
+            ret.counts[pos] = ret.total;
+        }
+        return ret;
+    }
+
+    private class Task extends RecursiveTask<MineCounts> {
+        private static final long serialVersionUID = 1L;
+        private final int depth;
+        private final int[] chosen;
+        private final int[] count;
+        private int satisfied;
+
+        Task(int depth, int[] chosen, int[] count, int satisfied) {
+            this.depth = depth;
+            this.chosen = chosen;
+            this.count = count;
+            this.satisfied = satisfied;
+        }
+
+        @Override
+        protected MineCounts compute() {
+            int next = depth == 0 ? 0 : chosen[depth - 1] + 1;
+            double remaining = CombinatoricsUtils.binomialCoefficientDouble(available.length - next, mines - depth);
+            MineCounts ret = new MineCounts(dimTotal);
+            if (remaining <= SEQUENTIAL_THRESHOLD){
+                walk(next, depth, ret);
+                return ret;
+            }
+
+            List<Task> subtasks = new ArrayList<>();
+            for (int i = next; i <= available.length - (mines - depth); i++){
+                Task subtask = new Task(depth + 1, chosen.clone(), count.clone(), satisfied);
+                if (subtask.place(i, depth)){
+                    subtasks.add(subtask);
+                }
+            }
+            invokeAll(subtasks).forEach(subtask -> ret.merge(subtask.join()));
+            return ret;
+        }
+
+        /**
+         * Places the depth-th mine at available[i]
+         * @return false if a revealed number now has too many mines around it
+         */
+        private boolean place(int i, int depth) {
+            chosen[depth] = i;
+            boolean feasible = true;
+            for (int c : constraintsOf[i]){
+                if (count[c] == need[c]){
+                    satisfied--;
+                }
+                count[c]++;
+                if (count[c] == need[c]){
+                    satisfied++;
+                }else if (count[c] > need[c]){
+                    feasible = false;
+                }
+            }
+            return feasible;
+        }
+
+        private void remove(int i) {
+            for (int c : constraintsOf[i]){
+                if (count[c] == need[c]){
+                    satisfied--;
+                }
+                count[c]--;
+                if (count[c] == need[c]){
+                    satisfied++;
+                }
+            }
+        }
+
+        private void walk(int next, int depth, MineCounts ret) {
+            if (depth == mines){
+                if (satisfied == need.length){
+                    ret.accept(available, chosen, mines);
+                }
+                return;
+            }
+            if (cancelled.getAsBoolean()){
+                throw new CancellationException("Exhaustive enumeration cancelled");
+            }
+            for (int i = next; i <= available.length - (mines - depth); i++){
+                if (place(i, depth)){
+                    walk(i + 1, depth + 1, ret);
+                }
+                remove(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package org.igor.minesweeper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Exact probability engine.
+ *
+ * Only the unopened boxes next to a revealed number are constrained. These are split into
+ * independent components (boxes linked through a shared number), and each component is solved by
+ * backtracking on its own. The rest of the unopened boxes (the interior) are weighted by the number
+ * of ways the remaining mines can be placed in them.
+ */
+public class FrontierSolver {
+    private static final Logger LOG = LoggerFactory.getLogger(FrontierSolver.class);
+
+    private final Minesweeper minesweeper;
+    private final ComponentCache cache;
+
+    public FrontierSolver(Minesweeper minesweeper) {
+        this(minesweeper, null);
+    }
+
+    /**
+     * @param cache where to look for components solved before, null to always enumerate them
+     */
+    public FrontierSolver(Minesweeper minesweeper, ComponentCache cache) {
+        this.minesweeper = minesweeper;
+        this.cache = cache;
+    }
+
+    /**
+     * One revealed number over the unopened boxes around it: their positions as built by
+     * {@link #of}, or their indexes in a {@link Component}. The engines that
+     * backtrack over boxes share the bookkeeping below: need[c] is the number of mines constraint
+     * c still misses, unassigned[c] the number of its boxes not assigned yet
+     */
+    static class Constraint {
+        final int[] cells;
+        final int mines;
+
+        Constraint(int[] cells, int mines) {
+            this.cells = cells;
+            this.mines = mines;
+        }
+
+        /**
+         * @return the revealed numbers over their unopened boxes, less the known mines around them.
+         * Cells are positions, ascending. A number with no unopened box around it is kept, with no cells
+         */
+        static List<Constraint> of(Minesweeper minesweeper, RevealedState revealed) {
+            List<Constraint> ret = new ArrayList<>();
+            for (int pos = revealed.next(0); pos >= 0; pos = revealed.next(pos + 1)){
+                int mines = revealed.get(pos);
+                if (mines < 0){
+                    continue;
+                }
+                int from = minesweeper.neighborOffsets[pos];
+                int to = minesweeper.neighborOffsets[pos + 1];
+                int[] cells = new int[to - from];
+                int cnt = 0;
+                for (int i = from; i < to; i++){
+                    int adj = minesweeper.neighbors[i];
+                    if (!revealed.isOpen(adj)){
+                        cells[cnt++] = adj;
+                    }else if (revealed.isFlagged(adj)){
+                        mines--;
+                    }
+                }
+                ret.add(new Constraint(Arrays.copyOf(cells, cnt), mines));
+            }
+            return ret;
+        }
+
+        /**
+         * @param cells the number of cells the constraints are over
+         * @return for each cell, the indexes of the constraints it is part of
+         */
+        static int[][] constraintsOf(List<Constraint> constraints, int cells) {
+            int[][] constraintsOf = new int[cells][];
+            int[] sizes = new int[cells];
+            for (Constraint constraint : constraints){
+                for (int cell : constraint.cells){
+                    sizes[cell]++;
+                }
+            }
+            for (int i = 0; i < cells; i++){
+                constraintsOf[i] = new int[sizes[i]];
+                sizes[i] = 0;
+            }
+            for (int c = 0; c < constraints.size(); c++){
+                for (int cell : constraints.get(c).cells){
+                    constraintsOf[cell][sizes[cell]++] = c;
+                }
+            }
+            return constraintsOf;
+        }
+
+        /**
+         * Sets need and unassigned for no cell assigned
+         */
+        static void init(List<Constraint> constraints, int[] need, int[] unassigned) {
+            for (int c = 0; c < constraints.size(); c++){
+                need[c] = constraints.get(c).mines;
+                unassigned[c] = constraints.get(c).cells.length;
+            }
+        }
+
+        /**
+         * Assigns value, 1 for a mine, to a cell
+         * @param constraints of the cell
+         * @return false if one of them can no longer be met. Unassign the cell either way
+         */
+        static boolean assign(int[] constraints, int[] need, int[] unassigned, int value) {
+            boolean feasible = true;
+            for (int c : constraints){
+                need[c] -= value;
+                unassigned[c]--;
+                if (need[c] < 0 || need[c] > unassigned[c]){
+                    feasible = false;
+                }
+            }
+            return feasible;
+        }
+
+        static void unassign(int[] constraints, int[] need, int[] unassigned, int value) {
+            for (int c : constraints){
+                need[c] += value;
+                unassigned[c]++;
+            }
+        }
+    }
+
+    /**
+     * A set of unopened boxes linked by shared constraints, along with its solutions grouped by the
+     * number of mines used.
+     */
+    static class Component {
+        final int[] positions;
+        final List<Constraint> constraints = new ArrayList<>();
+        /** solutions[k]: number of solutions using k mines */
+        long[] solutions;
+        /** mineCounts[k][i]: in how many of the solutions using k mines, positions[i] holds a mine */
+        long[][] mineCounts;
+
+        Component(int[] positions) {
+            this.positions = positions;
+        }
+
+        int maxMines() {
+            return solutions.length - 1;
+        }
+    }
+
+    /**
+     * @param revealed the boxes opened so far, -1 for a (known) mine
+     * @return the probability of each position containing a mine, as in {@link MineSweeperSampler#test()}
+     */
+    public double[] solve(Map<Integer, Integer> revealed) {
+        return solve(RevealedState.of(minesweeper.getDimTotal(), revealed));
+    }
+
+    public double[] solve(RevealedState revealed) {
+        int dimTotal = minesweeper.getDimTotal();
+        double[] probs = new double[dimTotal];
+
+        for (int pos = revealed.next(0); pos >= 0; pos = revealed.next(pos + 1)){
+            if (revealed.get(pos) == -1){
+                probs[pos] = 1;
+            }
+        }
+        int minesAvailable = minesweeper.getNumOfMines() - revealed.getMinesFound();
+
+        List<Component> components = components(revealed);
+        int frontier = 0;
+        for (Component component : components){
+            if (cache != null){
+                cache.enumerate(component, minesweeper.getDimY());
+            }else{
+                enumerate(component);
+            }
+            frontier += component.positions.length;
+        }
+        int interior = revealed.getAvailable() - frontier;
+
+        // convolution of all the components: ways[s] = number of frontier solutions using s mines
+        double[] all = {1};
+        for (Component component : components){
+            all = convolve(all, component.solutions);
+        }
+        double[] interiorWays = interiorWays(interior, minesAvailable, all.length - 1);
+
+        double total = 0;
+        double interiorMines = 0;
+        for (int s = 0; s < all.length; s++){
+            double w = all[s] * interiorWays[s];
+            total += w;
+            if (interior > 0){
+                interiorMines += w * (minesAvailable - s) / interior;
+            }
+        }
+        if (total == 0){
+            throw new IllegalStateException("No mine configuration matches the revealed boxes");
+        }
+
+        for (Component component : components){
+            double[] others = {1};
+            for (Component other : components){
+                if (other != component){
+                    others = convolve(others, other.solutions);
+                }
+            }
+            for (int k = 0; k <= component.maxMines(); k++){
+                if (component.solutions[k] == 0){
+                    continue;
+                }
+                double w = 0;
+                for (int s = 0; s < others.length && k + s < interiorWays.length; s++){
+                    w += others[s] * interiorWays[k + s];
+                }
+                for (int i = 0; i < component.positions.length; i++){
+                    probs[component.positions[i]] += component.mineCounts[k][i] * w / total;
+                }
+            }
+        }
+
+        if (interior > 0){
+            double p = interiorMines / total;
+            boolean[] onFrontier = new boolean[dimTotal];
+            components.forEach(c -> Arrays.stream(c.positions).forEach(pos -> onFrontier[pos] = true));
+            for (int pos = 0; pos < dimTotal; pos++){
+                if (!onFrontier[pos] && !revealed.isOpen(pos)){
+                    probs[pos] = p;
+                }
+            }
+        }
+        LOG.debug("Solved {} components, {} frontier / {} interior boxes", components.size(), frontier, interior);
+        return probs;
+    }
+
+    /**
+     * interiorWays[s] = C(interior, minesAvailable - s), scaled by a common factor so that large
+     * boards do not overflow
+     */
+    static double[] interiorWays(int interior, int minesAvailable, int maxFrontierMines) {
+        double[] logs = new double[maxFrontierMines + 1];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int s = 0; s <= maxFrontierMines; s++){
+            logs[s] = LogBinomial.log(interior, minesAvailable - s);
+            max = Math.max(max, logs[s]);
+        }
+        double[] ways = new double[logs.length];
+        for (int s = 0; s < logs.length; s++){
+            ways[s] = logs[s] == Double.NEGATIVE_INFINITY ? 0 : Math.exp(logs[s] - max);
+        }
+        return ways;
+    }
+
+    static double[] convolve(double[] a, long[] b) {
+        double[] ret = new double[a.length + b.length - 1];
+        for (int i = 0; i < a.length; i++){
+            if (a[i] == 0){
+                continue;
+            }
+            for (int j = 0; j < b.length; j++){
+                ret[i + j] += a[i] * b[j];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Splits the unopened boxes next to a revealed number into independent components
+     */
+    List<Component> components(Map<Integer, Integer> revealed) {
+        return components(RevealedState.of(minesweeper.getDimTotal(), revealed));
+    }
+
+    List<Component> components(RevealedState revealed) {
+        int dimTotal = minesweeper.getDimTotal();
+        int[] parent = new int[dimTotal];
+        Arrays.fill(parent, -1);
+
+        List<Constraint> constraints = Constraint.of(minesweeper, revealed);
+        constraints.removeIf(constraint -> constraint.cells.length == 0);
+        for (Constraint constraint : constraints){
+            for (int cell : constraint.cells){
+                if (parent[cell] == -1){
+                    parent[cell] = cell;
+                }
+                union(parent, constraint.cells[0], cell);
+            }
+        }
+
+        Map<Integer, List<Integer>> byRoot = new TreeMap<>();
+        for (int pos = 0; pos < dimTotal; pos++){
+            if (parent[pos] != -1){
+                byRoot.computeIfAbsent(find(parent, pos), r -> new ArrayList<>()).add(pos);
+            }
+        }
+        Map<Integer, Component> componentByRoot = new HashMap<>();
+        int[] indexInComponent = new int[dimTotal];
+        byRoot.forEach((root, positions) -> {
+            Component component = new Component(positions.stream().mapToInt(Integer::intValue).toArray());
+            for (int i = 0; i < component.positions.length; i++){
+                indexInComponent[component.positions[i]] = i;
+            }
+            componentByRoot.put(root, component);
+        });
+        for (Constraint constraint : constraints){
+            Component component = componentByRoot.get(find(parent, constraint.cells[0]));
+            int[] local = Arrays.stream(constraint.cells).map(cell -> indexInComponent[cell]).toArray();
+            component.constraints.add(new Constraint(local, constraint.mines));
+        }
+        return new ArrayList<>(componentByRoot.values());
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i){
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra != rb){
+            parent[rb] = ra;
+        }
+    }
+
+    /**
+     * Backtracks over all the mine assignments of the component that satisfy its constraints
+     */
+    static void enumerate(Component component) {
+        int n = component.positions.length;
+        component.solutions = new long[n + 1];
+        component.mineCounts = new long[n + 1][n];
+
+        int[][] constraintsOf = Constraint.constraintsOf(component.constraints, n);
+        int m = component.constraints.size();
+        int[] need = new int[m];
+        int[] unassigned = new int[m];
+        Constraint.init(component.constraints, need, unassigned);
+        boolean[] mine = new boolean[n];
+        backtrack(component, constraintsOf, need, unassigned, mine, 0, 0);
+    }
+
+    /**
+     * Knuth's estimate of the size of the tree that {@link #enumerate} walks: random dives from the
+     * root, each picking one feasible value per level, with the product of the number of feasible
+     * values along the way standing for the nodes of each level
+     * @return the average estimate over the given number of dives
+     */
+    static double estimateNodes(Component component, int dives, SplittableRandom random) {
+        int n = component.positions.length;
+        int[][] constraintsOf = Constraint.constraintsOf(component.constraints, n);
+        int m = component.constraints.size();
+        int[] need = new int[m];
+        int[] unassigned = new int[m];
+        double sum = 0;
+        for (int d = 0; d < dives; d++){
+            Constraint.init(component.constraints, need, unassigned);
+            double width = 1;
+            double nodes = 1;
+            for (int i = 0; i < n; i++){
+                int feasible = 0;
+                int pick = -1;
+                for (int value = 0; value <= 1; value++){
+                    if (Constraint.assign(constraintsOf[i], need, unassigned, value)){
+                        feasible++;
+                        if (pick == -1 || random.nextInt(feasible) == 0){
+                            pick = value;
+                        }
+                    }
+                    Constraint.unassign(constraintsOf[i], need, unassigned, value);
+                }
+                if (feasible == 0){
+                    break;
+                }
+                Constraint.assign(constraintsOf[i], need, unassigned, pick);
+                width *= feasible;
+                nodes += width;
+            }
+            sum += nodes;
+        }
+        return sum / dives;
+    }
+
+    private static void backtrack(Component component, int[][] constraintsOf, int[] need, int[] unassigned,
+                                  boolean[] mine, int i, int mines) {
+        if (i == component.positions.length){
+            component.solutions[mines]++;
+            long[] counts = component.mineCounts[mines];
+            for (int j = 0; j < mine.length; j++){
+                if (mine[j]){
+                    counts[j]++;
+                }
+            }
+            return;
+        }
+        for (int value = 0; value <= 1; value++){
+            if (Constraint.assign(constraintsOf[i], need, unassigned, value)){
+                mine[i] = value == 1;
+                backtrack(component, constraintsOf, need, unassigned, mine, i + 1, mines + value);
+                mine[i] = false;
+            }
+            Constraint.unassign(constraintsOf[i], need, unassigned, value);
+        }
+    }
+}
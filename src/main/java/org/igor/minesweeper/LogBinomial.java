@@ -0,0 +1,54 @@
+package org.igor.minesweeper;
+
+/**
+ * Logs of binomial coefficients, from a table of log factorials shared by all threads.
+ *
+ * The engines weigh every frontier configuration by the number of ways the remaining mines fit in
+ * the interior, C(interior, mines), once per draw or per mine count. The table grows to the largest
+ * board seen and is never recomputed after that, so each weight costs three lookups.
+ */
+final class LogBinomial {
+    /** logFactorials[n] = log(n!) */
+    private static volatile double[] logFactorials = {0};
+
+    private LogBinomial() {
+    }
+
+    /**
+     * @return log(C(n, k)), negative infinity when k is not in [0, n]
+     */
+    static double log(int n, int k) {
+        if (k < 0 || k > n){
+            return Double.NEGATIVE_INFINITY;
+        }
+        double[] table = table(n);
+        return table[n] - table[k] - table[n - k];
+    }
+
+    /**
+     * @return log(n!)
+     */
+    static double logFactorial(int n) {
+        return table(n)[n];
+    }
+
+    private static double[] table(int n) {
+        double[] table = logFactorials;
+        if (n < table.length){
+            return table;
+        }
+        synchronized (LogBinomial.class){
+            table = logFactorials;
+            if (n >= table.length){
+                double[] grown = new double[Math.max(n + 1, table.length * 2)];
+                System.arraycopy(table, 0, grown, 0, table.length);
+                for (int i = table.length; i < grown.length; i++){
+                    grown[i] = grown[i - 1] + Math.log(i);
+                }
+                logFactorials = grown;
+                table = grown;
+            }
+            return table;
+        }
+    }
+}
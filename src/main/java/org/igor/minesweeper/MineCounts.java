@@ -0,0 +1,140 @@
+package org.igor.minesweeper;
+
+/**
+ * Per position mine counts over a stream of plans, without keeping the plans themselves.
+ *
+ * Plans can carry an importance weight, given as a log. Weights are stored relative to the
+ * largest one seen so far, so that they do not overflow.
+ */
+public class MineCounts {
+    final double[] counts;
+    double total;
+    private double sumOfSquares;
+    private long plans;
+    /** the stored weights are the actual ones divided by exp(logScale) */
+    private double logScale;
+
+    public MineCounts(int dimTotal) {
+        counts = new double[dimTotal];
+    }
+
+    /**
+     * @return the number of plans counted
+     */
+    public long getPlans() {
+        return plans;
+    }
+
+    /**
+     * @return the total (scaled) weight of the plans counted
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the (scaled) weight of the plans that contain a mine at pos
+     */
+    public double count(int pos) {
+        return counts[pos];
+    }
+
+    /**
+     * @return (sum w)^2 / sum w^2, equal to the number of plans when they are not weighted
+     */
+    public double effectiveSampleSize() {
+        return effectiveSampleSize(total, sumOfSquares);
+    }
+
+    /**
+     * @param sum          of the weights of the samples
+     * @param sumOfSquares of the weights of the samples
+     * @return (sum w)^2 / sum w^2, the number of unweighted samples that would give the same
+     * accuracy. The weights may all be scaled by the same factor
+     */
+    static double effectiveSampleSize(double sum, double sumOfSquares) {
+        return sumOfSquares == 0 ? 0 : sum * sum / sumOfSquares;
+    }
+
+    public void accept(long[] plan) {
+        accept(plan, 0);
+    }
+
+    public void accept(long[] plan, double logWeight) {
+        double w = weight(logWeight);
+        for (int i = 0; i < plan.length; i++){
+            long word = plan[i];
+            while (word != 0){
+                counts[(i << 6) + Long.numberOfTrailingZeros(word)] += w;
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Counts a plan of weight 1, with mines at positions[indexes[0..length)]
+     */
+    void accept(int[] positions, int[] indexes, int length) {
+        double w = weight(0);
+        for (int j = 0; j < length; j++){
+            counts[positions[indexes[j]]] += w;
+        }
+    }
+
+    private double weight(double logWeight) {
+        if (plans == 0){
+            logScale = logWeight;
+        }else if (logWeight > logScale){
+            rescale(logWeight);
+        }
+        double w = Math.exp(logWeight - logScale);
+        total += w;
+        sumOfSquares += w * w;
+        plans++;
+        return w;
+    }
+
+    private void rescale(double newLogScale) {
+        double factor = Math.exp(logScale - newLogScale);
+        for (int pos = 0; pos < counts.length; pos++){
+            counts[pos] *= factor;
+        }
+        total *= factor;
+        sumOfSquares *= factor * factor;
+        logScale = newLogScale;
+    }
+
+    /**
+     * Adds the counts of other to this
+     * @return this
+     */
+    public MineCounts merge(MineCounts other) {
+        if (other.plans == 0){
+            return this;
+        }
+        if (plans == 0){
+            logScale = other.logScale;
+        }else if (other.logScale > logScale){
+            rescale(other.logScale);
+        }
+        double factor = Math.exp(other.logScale - logScale);
+        for (int pos = 0; pos < counts.length; pos++){
+            counts[pos] += other.counts[pos] * factor;
+        }
+        total += other.total * factor;
+        sumOfSquares += other.sumOfSquares * factor * factor;
+        plans += other.plans;
+        return this;
+    }
+
+    /**
+     * @return for each position, the (weighted) fraction of the plans that contain a mine there
+     */
+    public double[] probabilities() {
+        double[] ret = new double[counts.length];
+        for (int pos = 0; pos < ret.length; pos++){
+            ret[pos] = counts[pos] / total;
+        }
+        return ret;
+    }
+}
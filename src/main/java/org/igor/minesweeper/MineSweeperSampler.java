@@ -1,176 +1,562 @@
 package org.igor.minesweeper;
 
-import org.apache.commons.math3.util.CombinatoricsUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
 public class MineSweeperSampler {
     private static final Logger LOG = LoggerFactory.getLogger(MineSweeperSampler.class);
 
 
     private Minesweeper minesweeper;
+    private final Deducer deducer;
+    private final StrategyPlanner planner;
+    private final MoveRecommender recommender;
+    private final ComponentCache cache;
+    private final Executor executor;
+    /** where exhaustive enumeration and move evaluation fork */
+    private final ForkJoinPool forkJoinPool;
     private int numOfSamples;
-    private List<byte[]> samples;
+    private SamplePool samples;
+    /** when set, plans are folded into counts as they are produced and never stored */
+    private final boolean countOnly;
+
     public MineSweeperSampler(int numOfSamples,Minesweeper minesweeper){
+        this(numOfSamples,minesweeper,false);
+    }
+
+    public MineSweeperSampler(int numOfSamples,Minesweeper minesweeper,boolean countOnly){
+        this(numOfSamples,minesweeper,countOnly,new SplittableRandom());
+    }
+
+    /**
+     * @param countOnly if true, keep only per position mine counts instead of a pool of samples. Memory
+     *                  then depends on the size of the board only, but every open() starts over
+     * @param random    seed it for reproducible runs. Each regeneration works on its own split of it
+     */
+    public MineSweeperSampler(int numOfSamples,Minesweeper minesweeper,boolean countOnly,SplittableRandom random){
+        this(numOfSamples,minesweeper,countOnly,random,new SolverMetrics(),new ComponentCache(CACHE_BYTES));
+    }
+
+    /**
+     * @param metrics where to record what the sampler does, can be shared by several samplers. The
+     *                gauges are then those of the last sampler created
+     * @param cache   the frontier components solved so far, can be shared by several samplers
+     */
+    public MineSweeperSampler(int numOfSamples,Minesweeper minesweeper,boolean countOnly,SplittableRandom random,SolverMetrics metrics,ComponentCache cache){
+        this(numOfSamples,minesweeper,countOnly,random,metrics,cache,ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor where regeneration runs. If it rejects a move, the job of the move fails with
+     *                 a RejectedExecutionException, and the move is still taken into account by the next one.
+     *                 If it is a ForkJoinPool, the work split by the exhaustive engine and by recommend()
+     *                 runs there too, otherwise on the common pool
+     */
+    public MineSweeperSampler(int numOfSamples,Minesweeper minesweeper,boolean countOnly,SplittableRandom random,SolverMetrics metrics,ComponentCache cache,Executor executor){
+        this(numOfSamples,minesweeper,countOnly,random,metrics,cache,executor,
+                executor instanceof ForkJoinPool ? (ForkJoinPool) executor : ForkJoinPool.commonPool(),true);
+    }
+
+    /**
+     * @param forkJoinPool   where the work split by the exhaustive engine and by recommend() runs
+     * @param registerGauges false when the owner of metrics registers gauges over all its samplers,
+     *                       as {@link SolverService} does
+     */
+    public MineSweeperSampler(int numOfSamples,Minesweeper minesweeper,boolean countOnly,SplittableRandom random,SolverMetrics metrics,ComponentCache cache,Executor executor,ForkJoinPool forkJoinPool,boolean registerGauges){
         this.numOfSamples = numOfSamples;
+        this.executor = executor;
+        this.forkJoinPool = forkJoinPool;
+        this.metrics = metrics;
+        this.cache = cache;
         this.minesweeper = minesweeper;
-        samples = IntStream.range(0,numOfSamples).mapToObj(i->Minesweeper.init(minesweeper.getDimX(),minesweeper.getDimY(),minesweeper.getNumOfMines(),null)).collect(Collectors.toList());
+        this.deducer = new Deducer(minesweeper);
+        this.planner = new StrategyPlanner(minesweeper,cache,LATENCY_BUDGET_NANOS);
+        this.recommender = new MoveRecommender(minesweeper,forkJoinPool,forkJoinPool.getParallelism()+1);
+        this.countOnly = countOnly;
+        this.random = random;
+        this.openedSoFar = new RevealedState(minesweeper.getDimTotal());
+        this.deduced = openedSoFar.snapshot();
+        //Nothing is known before the first move: every box has the same chance, and the pool is
+        //only filled once there is something to match
+        samples = new SamplePool(minesweeper,countOnly ? 0 : 64);
+        solved = estimate(openedSoFar);
+        if (registerGauges){
+            registerGauges();
+        }
     }
 
-    private Map<Byte,Integer> openedSoFar = new TreeMap<>();
+    private void registerGauges(){
+        metrics.gauge("pool.size",()->samples.size());
+        metrics.gauge("cache.size",cache::size);
+        metrics.gauge("cache.bytes",cache::getBytes);
+        metrics.gauge("cache.hits",cache::getHits);
+        metrics.gauge("cache.misses",cache::getMisses);
+        metrics.gauge("sampling.effectiveSampleSize",()->effectiveSampleSize);
+        metrics.gauge("retain.acceptanceRate",()->(double) metrics.counter("retain.kept")/metrics.counter("retain.checked"));
+        for (StrategyPlanner.Engine engine:StrategyPlanner.Engine.values()){
+            metrics.gauge("planner."+engine.name().toLowerCase()+".nanosPerUnit",()->planner.getNanosPerUnit(engine));
+        }
+    }
 
-    CompletableFuture<List<byte[]>> regenerateCF;
-    private volatile boolean cancel;
-    private boolean exhausted = false;
+    /** updated move by move, the jobs get snapshots of it */
+    private final RevealedState openedSoFar;
+    /** read only: openedSoFar with the boxes forced by it, as regenerated by the current job */
+    private RevealedState deduced;
+    /** the job working on the latest move, cancelled as soon as a new move arrives */
+    private SolverJob currentJob;
+    /** counts for openedSoFar (exact, or streamed in count only mode), null when they have to be computed again */
+    private MineCounts counts;
+    /** probabilities for openedSoFar computed directly: the uniform prior before the first move, by the frontier solver, or from the estimate when a deduced safe box made solving not worth it */
+    private double[] solved;
+    /** only used under the lock, to split the streams of the jobs */
+    private final SplittableRandom random;
+    private volatile double effectiveSampleSize = Double.NaN;
+    static final int CHUNK = 1_000;
+    /** exact engines are used as long as they are expected to take less than this */
+    static final long LATENCY_BUDGET_NANOS = 200_000_000L;
+    /** heap the frontier components solved so far may take */
+    static final long CACHE_BYTES = 64L << 20;
+    /** below this many samples, the information of a move is estimated from the probabilities */
+    static final int RECOMMEND_MIN_SAMPLES = 100;
+    private static final int MAGIC = 0x4d53534e;
+    private static final int VERSION = 2;
+    private final SolverMetrics metrics;
 
-    List<byte[]> regenerateBySampling(){
-        Map<Byte,Integer> openedSoFar = new TreeMap<>(this.openedSoFar);
-        List<byte[]> newSamples = new ArrayList<>();
-        LOG.info("RegenerateBySampling STARTED for {}",openedSoFar.size());
-        for (int i=0;i<numOfSamples/10-samples.size();i++){
-            byte[] plan = Minesweeper.init(minesweeper.getDimX(), minesweeper.getDimY(), minesweeper.getNumOfMines(),openedSoFar);
-            while (!minesweeper.matches(openedSoFar, plan)){
-                if (cancel){
-                    LOG.info("RegenerateCF cancelled #1");
-                    throw new CancellationException("RegenerateCF cancelled #1");
-                }
+    /**
+     * @return counters, timings and gauges of the work done so far
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
 
-                plan = Minesweeper.init(minesweeper.getDimX(), minesweeper.getDimY(), minesweeper.getNumOfMines(),openedSoFar);
-            }
-            newSamples.add(plan);
-        }
-        LOG.info("RegenerateBySampling FINISHED for {}",openedSoFar.size());
-        return newSamples;
-    }
-
-    List<byte[]> regenerateExhaustivelly(){
-        if (exhausted){
-            return Collections.emptyList();
-        }
-        Map<Byte,Integer> openedSoFar = new TreeMap<>(this.openedSoFar);
-        int minesFound = (int) openedSoFar.values().stream().filter(v->v== -1).count();
-        int minesAvailable = minesweeper.getNumOfMines() - minesFound;
-        int boxesOpen = openedSoFar.size();
-        int boxesAvailable = minesweeper.getDimTotal() - boxesOpen;
-
-        LOG.info("RegenerateExhaustivelly STARTED for {}/{}/{}",boxesAvailable,minesAvailable,openedSoFar.size());
-        List<byte[]> newSamples = new ArrayList<>();
-        byte[] boxesAvailablePositions = new byte[boxesAvailable];
-        AtomicInteger cnt = new AtomicInteger(0);
-        IntStream.range(0,minesweeper.getDimTotal())
-                .filter(i-> !openedSoFar.containsKey((byte)i))
-                .forEach(ip->{
-                    boxesAvailablePositions[cnt.getAndIncrement()] = (byte)ip;
-                });
-
-        Set<Byte> soFar = openedSoFar.entrySet().stream().filter(e->e.getValue() == -1).map(Map.Entry::getKey).collect(Collectors.toSet());
-
-        Iterator<int[]> iterator = CombinatoricsUtils.combinationsIterator(boxesAvailable,minesAvailable);
-        while(iterator.hasNext()){
-            if (cancel){
-                LOG.info("RegenerateCF cancelled");
-                throw new CancellationException("RegenerateCF cancelled #2");
-            }
-            int[] pzs = iterator.next();
-            Set<Byte> _soFar = new TreeSet<>(soFar);
-            Arrays.stream(pzs).forEach(pz->{
-                byte pos = boxesAvailablePositions[pz];
-                _soFar.add(pos);
-            });
-            byte[] plan = new byte[_soFar.size()];
-            Iterator<Byte> _soFarIterator = _soFar.iterator();
-            IntStream.range(0,plan.length).forEach(i->{
-                plan[i] = _soFarIterator.next();
-            });
-
-            /*
-            if (!minesweeper.matches(openedSoFar,plan)){
-                LOG.error("Invalid plan added {} -> {}",openedSoFar,plan);
-                throw new IllegalStateException("Invalid plan added");
-            }
-            */
+    /**
+     * @return the number of samples in the pool, always 0 in count only mode
+     */
+    public synchronized int getPoolSize() {
+        return samples.size();
+    }
 
-            if (minesweeper.matches(openedSoFar,plan)) {
-                newSamples.add(plan);
-            }
-        };
-        LOG.info("RegenerateExhaustivelly FINISHED for {}/{}/{}",boxesAvailable,minesAvailable,openedSoFar.size());
-        exhausted = true;
-        return newSamples;
+    StrategyPlanner getPlanner() {
+        return planner;
     }
 
-    public void open(Map<Byte,Integer> moves){
-        synchronized (this) {
-            LOG.info("Open called for {} moves",moves.size());
-            openedSoFar.putAll(moves);
-            boolean changed = samples.removeIf(plan -> !minesweeper.matches(openedSoFar, plan));
+    /**
+     * @return the effective sample size of the weighted pool, or of the counts in count only mode,
+     * as of the last sampling run. NaN if none was made
+     */
+    public double getEffectiveSampleSize() {
+        return effectiveSampleSize;
+    }
+
+    /**
+     * Draws weighted plans that match openedSoFar into the pool, along with their weights normalized
+     * within their chunk, publishing a snapshot after every chunk. The samples kept from earlier
+     * moves keep their own weights
+     */
+    long regenerateBySampling(SolverJob job,RevealedState openedSoFar,SplittableRandom random){
+        int toGenerate = numOfSamples/10-samples.size();
+        if (toGenerate <= 0){
+            return 0;
         }
-        try {
-            if (regenerateCF!=null){
-                cancel = true;
-                try {
-                    regenerateCF.get();
-                }catch (InterruptedException |ExecutionException e) {
-                    e.toString();
-                }
-                cancel = false;
+        LOG.info("RegenerateBySampling STARTED for {}",openedSoFar.size());
+        ConstrainedSampler sampler = new ConstrainedSampler(minesweeper,openedSoFar,random);
+        for (int generated = 0;generated < toGenerate;generated += CHUNK){
+            int n = Math.min(CHUNK,toGenerate - generated);
+            ConstrainedSampler.Batch batch = sampler.sample(n,job::isCancelled);
+            metrics.add("sampling.drawn",batch.plans.size());
+            double[] probs;
+            synchronized (this){
+                checkCancelled(job,"#1");
+                samples.addAll(batch.plans,batch.normalizedLogWeights());
+                effectiveSampleSize = samples.effectiveSampleSize();
+                probs = estimate(openedSoFar);
             }
+            //the listeners must not hold up open() and test()
+            job.publish(probs);
+        }
+        LOG.info("RegenerateBySampling FINISHED for {}, effective sample size {}/{}",openedSoFar.size(),(int)effectiveSampleSize,samples.size());
+        return toGenerate;
+    }
 
-            regenerateCF = CompletableFuture.supplyAsync(()->{
-                LOG.info("Regenerate called for {} moves",moves.size());
+    /**
+     * Streams weighted plans that match openedSoFar into counts, publishing a snapshot after every chunk
+     */
+    long regenerateCounts(SolverJob job,RevealedState openedSoFar,SplittableRandom random){
+        LOG.info("RegenerateCounts STARTED for {}",openedSoFar.size());
+        ConstrainedSampler sampler = new ConstrainedSampler(minesweeper,openedSoFar,random);
+        MineCounts jobCounts = new MineCounts(minesweeper.getDimTotal());
+        for (int generated = 0;generated < numOfSamples/10;generated += CHUNK){
+            MineCounts chunk = new MineCounts(minesweeper.getDimTotal());
+            sampler.sample(Math.min(CHUNK,numOfSamples/10 - generated),chunk,job::isCancelled);
+            metrics.add("sampling.drawn",chunk.getPlans());
+            double[] probs;
+            synchronized (this){
+                checkCancelled(job,"#3");
+                counts = jobCounts.merge(chunk);
+                effectiveSampleSize = counts.effectiveSampleSize();
+                probs = counts.probabilities();
+            }
+            job.publish(probs);
+        }
+        LOG.info("RegenerateCounts FINISHED for {}, effective sample size {}/{}",openedSoFar.size(),(int)effectiveSampleSize,jobCounts.getPlans());
+        return jobCounts.getPlans();
+    }
 
-                int minesFound = (int) openedSoFar.values().stream().filter(v->v== -1).count();
-                int minesAvailable = minesweeper.getNumOfMines() - minesFound;
-                int boxesOpen = openedSoFar.size();
-                int boxesAvailable = minesweeper.getDimTotal() - boxesOpen;
+    /**
+     * Solves openedSoFar exactly, component by component
+     */
+    void regenerateByFrontier(SolverJob job,RevealedState openedSoFar){
+        LOG.info("RegenerateByFrontier STARTED for {}",openedSoFar.size());
+        double[] probs = new FrontierSolver(minesweeper,cache).solve(openedSoFar);
+        synchronized (this){
+            checkCancelled(job,"#4");
+            solved = probs;
+        }
+        LOG.info("RegenerateByFrontier FINISHED for {}",openedSoFar.size());
+    }
 
-                long combos = CombinatoricsUtils.binomialCoefficient(boxesAvailable,minesAvailable);
+    /**
+     * Counts the mines over every plan that matches openedSoFar
+     */
+    void regenerateExhaustivelly(SolverJob job,RevealedState openedSoFar){
+        ExhaustiveEnumerator enumerator = new ExhaustiveEnumerator(minesweeper,openedSoFar,job::isCancelled);
 
-                if (combos > 10_000* numOfSamples) {
-                    return regenerateBySampling();
+        LOG.info("RegenerateExhaustivelly STARTED for {} combinations/{}",(long)enumerator.combinations(),openedSoFar.size());
+        MineCounts exact = enumerator.enumerate(forkJoinPool);
+        metrics.add("exhaustive.combinations",(long) enumerator.combinations());
+        metrics.add("exhaustive.matching",exact.getPlans());
+        synchronized (this){
+            checkCancelled(job,"#2");
+            counts = exact;
+        }
+        LOG.info("RegenerateExhaustivelly FINISHED for {} matching/{}",exact.getPlans(),openedSoFar.size());
+    }
 
+    private void checkCancelled(SolverJob job,String where){
+        if (job.isCancelled()){
+            LOG.info("Regenerate cancelled {}",where);
+            throw new CancellationException("Regenerate cancelled "+where);
+        }
+    }
+
+    private void regenerate(SolverJob job,RevealedState revealed,SplittableRandom random){
+        LOG.info("Regenerate called for {} opened",revealed.size());
+        //A newer move may have come while this one was queued
+        checkCancelled(job,"#0");
 
-                }else{
-                    return regenerateExhaustivelly();
+        //Boxes forced by the numbers are treated as opened from here on
+        long start = System.nanoTime();
+        RevealedState forced = deducer.deduce(revealed);
+        metrics.record("deduce.nanos",System.nanoTime() - start);
+        metrics.add("deduce.forced",forced.size());
+        RevealedState openedSoFar = revealed;
+        if (forced.size() > 0){
+            openedSoFar = revealed.copy();
+            openedSoFar.putAll(forced);
+            openedSoFar.freeze();
+        }
+        int draws;
+        double[] first;
+        synchronized (this){
+            checkCancelled(job,"#5");
+            deduced = openedSoFar;
+            draws = countOnly ? numOfSamples/10 : Math.max(0,numOfSamples/10 - samples.size());
+            //the forced boxes show right away, the others are refined below
+            first = forced.size() > 0 || samples.size() > 0 ? estimate(openedSoFar) : null;
+        }
+        if (first != null){
+            job.publish(first);
+        }
+        //A safe box is an obvious next move: only the frontier solver is cheap enough to be worth
+        //waiting for, sampling and enumeration are left to the move after it
+        boolean safeForced = forced.getMinesFound() < forced.size();
+        StrategyPlanner.Plan plan = planner.plan(openedSoFar,safeForced ? 0 : draws,random);
+        LOG.info("Regenerate planned {}",plan);
+        StrategyPlanner.Engine engine = plan.engine;
+        if (safeForced){
+            if (plan.estimatedNanos.get(StrategyPlanner.Engine.FRONTIER) > LATENCY_BUDGET_NANOS){
+                synchronized (this){
+                    checkCancelled(job,"#6");
+                    solved = estimate(openedSoFar);
                 }
+                metrics.increment("regenerate.skipped");
+                LOG.info("Regenerate deduced {} boxes, skipped",forced.size());
+                return;
+            }
+            engine = StrategyPlanner.Engine.FRONTIER;
+        }
+
+        String branch;
+        start = System.nanoTime();
+        double units = plan.units.get(engine);
+        try {
+            switch (engine){
+                case FRONTIER:
+                    branch = "frontier";
+                    regenerateByFrontier(job,openedSoFar);
+                    break;
+                case EXHAUSTIVE:
+                    branch = "exhaustive";
+                    regenerateExhaustivelly(job,openedSoFar);
+                    break;
+                default:
+                    long drawn;
+                    if (countOnly){
+                        branch = "counts";
+                        drawn = regenerateCounts(job,openedSoFar,random);
+                    }else {
+                        branch = "sampling";
+                        drawn = regenerateBySampling(job,openedSoFar,random);
+                    }
+                    units = draws == 0 ? 0 : units*drawn/draws;
+            }
+        } catch (CancellationException e){
+            metrics.increment("regenerate.cancelled");
+            throw e;
+        }
+        long nanos = System.nanoTime() - start;
+        planner.record(engine,units,nanos);
+        metrics.increment("regenerate."+branch);
+        metrics.record("regenerate."+branch+".estimatedNanos",(long) Math.min(Long.MAX_VALUE,plan.estimatedNanos.get(engine)));
+        metrics.record("regenerate."+branch+".nanos",nanos);
+    }
+
+    /**
+     * The current estimate with the forced boxes set to 0 or 1. Without samples, the mines that are
+     * not forced are spread evenly over the boxes that are not
+     */
+    private double[] estimate(RevealedState revealed){
+        double[] probs = samples.size() > 0 ? samples.marginals() : new double[minesweeper.getDimTotal()];
+        if (samples.size() == 0){
+            double density = (double) (minesweeper.getNumOfMines() - revealed.getMinesFound())/revealed.getAvailable();
+            Arrays.fill(probs,density);
+        }
+        for (int pos = revealed.next(0);pos >= 0;pos = revealed.next(pos+1)){
+            probs[pos] = revealed.isFlagged(pos) ? 1 : 0;
+        }
+        return probs;
+    }
 
+    /**
+     * Records the moves and starts computing the new probabilities in the background. The job of
+     * the previous move, if still running, is cancelled.
+     *
+     * Regeneration first finds the boxes forced by the revealed numbers and treats them as opened.
+     * If any, they are published as the first snapshot, so that an obvious next move shows before
+     * the rest is computed. If one of them is safe, only the frontier solver runs after that, and
+     * only if it fits the latency budget.
+     * @return a handle publishing the estimates as they are refined
+     */
+    public SolverJob open(Map<Integer,Integer> moves){
+        int[] positions = new int[moves.size()];
+        int[] values = new int[moves.size()];
+        int i = 0;
+        for (Map.Entry<Integer,Integer> e:moves.entrySet()){
+            positions[i] = e.getKey();
+            values[i++] = e.getValue();
+        }
+        return open(positions,values);
+    }
+
+    /**
+     * @see #open(Map)
+     */
+    public SolverJob open(int[] positions,int[] values){
+        SolverJob job = new SolverJob();
+        RevealedState snapshot;
+        SplittableRandom jobRandom;
+        synchronized (this) {
+            LOG.info("Open called for {} moves",positions.length);
+            if (currentJob != null){
+                currentJob.cancel();
+            }
+            currentJob = job;
+            //The samples already match what was opened before, only check the new boxes
+            int[] newPositions = new int[positions.length];
+            int[] newValues = new int[positions.length];
+            int cnt = 0;
+            for (int i=0;i<positions.length;i++){
+                if (!openedSoFar.isOpen(positions[i])){
+                    newPositions[cnt] = positions[i];
+                    newValues[cnt++] = values[i];
+                }
+            }
+            openedSoFar.putAll(positions,values);
+            int before = samples.size();
+            samples.retain(Arrays.copyOf(newPositions,cnt),Arrays.copyOf(newValues,cnt));
+            metrics.increment("open");
+            metrics.add("retain.checked",before);
+            metrics.add("retain.kept",samples.size());
+            counts = null;
+            solved = null;
+            snapshot = openedSoFar.snapshot();
+            deduced = snapshot;
+            jobRandom = random.split();
+        }
+        CompletableFuture<Void> regeneration;
+        try {
+            regeneration = CompletableFuture.runAsync(()->regenerate(job,snapshot,jobRandom),executor);
+        } catch (RejectedExecutionException e){
+            metrics.increment("regenerate.rejected");
+            job.fail(e);
+            return job;
+        }
+        regeneration.whenComplete((_void,e)->{
+            if (e == null){
+                job.complete(test());
+                LOG.info("Open done for {} moves",positions.length);
+            }else if (e.getCause() instanceof CancellationException){
+                job.fail(e.getCause());
+            }else{
+                metrics.increment("regenerate.failed");
+                LOG.error("While regenerating",e);
+                job.fail(e.getCause());
+            }
+        });
+        return job;
+    }
 
-            });
+    /**
+     * Writes the board, the boxes opened so far, the pool of samples and the current probabilities
+     * to file, through a memory mapping. The pool is written as packed in memory, so that restore()
+     * does not have to generate it again
+     */
+    public synchronized void save(Path file) throws IOException {
+        double[] probs = counts != null || solved != null ? test() : null;
+        long bytes = 8 + minesweeper.bytes() + 13 + 4 + 8L*openedSoFar.size() + samples.bytes()
+                + 4 + (probs == null ? 0 : 8L*probs.length);
+        try (FileChannel channel = FileChannel.open(file,StandardOpenOption.CREATE,StandardOpenOption.READ,
+                StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,0,bytes);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            minesweeper.writeTo(buffer);
+            buffer.putInt(numOfSamples).put((byte) (countOnly ? 1 : 0)).putDouble(effectiveSampleSize);
+            buffer.putInt(openedSoFar.size());
+            for (int pos = openedSoFar.next(0);pos >= 0;pos = openedSoFar.next(pos+1)){
+                buffer.putInt(pos).putInt(openedSoFar.get(pos));
+            }
+            samples.writeTo(buffer);
+            buffer.putInt(probs == null ? -1 : probs.length);
+            if (probs != null){
+                buffer.asDoubleBuffer().put(probs);
+            }
+            buffer.force();
+        }
+        LOG.info("Saved {} opened, {} samples to {}",openedSoFar.size(),samples.size(),file);
+    }
 
-            List<byte[]> newSamplesAsync = regenerateCF.get();
-            synchronized (this) {
-                samples.addAll(newSamplesAsync);
+    /**
+     * Reads back a sampler written by save()
+     * @param random seed it for reproducible runs from the restored state
+     * @throws IOException if file was not written by save()
+     */
+    public static MineSweeperSampler restore(Path file,SplittableRandom random) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                throw new IOException("Not a sampler snapshot: "+file);
+            }
+            Minesweeper minesweeper = Minesweeper.readFrom(buffer);
+            int numOfSamples = buffer.getInt();
+            boolean countOnly = buffer.get() != 0;
+            MineSweeperSampler ret = new MineSweeperSampler(numOfSamples,minesweeper,countOnly,random,
+                    new SolverMetrics(),new ComponentCache(CACHE_BYTES));
+            ret.effectiveSampleSize = buffer.getDouble();
+            int opened = buffer.getInt();
+            for (int i=0;i<opened;i++){
+                ret.openedSoFar.put(buffer.getInt(),buffer.getInt());
             }
-            LOG.info("Open done for {} moves",moves.size());
-        } catch (InterruptedException |ExecutionException e) {
-            LOG.error("While regenerating",e);
+            ret.deduced = ret.openedSoFar.snapshot();
+            ret.samples = SamplePool.readFrom(minesweeper,buffer);
+            ret.solved = null;
+            int length = buffer.getInt();
+            if (length >= 0){
+                ret.solved = new double[length];
+                buffer.asDoubleBuffer().get(ret.solved);
+            }
+            LOG.info("Restored {} opened, {} samples from {}",opened,ret.samples.size(),file);
+            return ret;
         }
+    }
 
+    public Minesweeper getMinesweeper() {
+        return minesweeper;
+    }
 
+    /**
+     * @return a copy of the boxes opened so far
+     */
+    public synchronized Map<Integer,Integer> getOpenedSoFar() {
+        return openedSoFar.toMap();
     }
 
-    public void open(byte pos,int value){
-        open(Collections.singletonMap(pos,value));
+    /**
+     * @return a read only copy of the boxes opened so far
+     */
+    public synchronized RevealedState getRevealedState() {
+        return openedSoFar.snapshot();
     }
 
     /**
-     *
+     * @see Minesweeper#reveal(int, long[])
+     */
+    public SolverJob open(Minesweeper.Reveal reveal){
+        return open(reveal.positions,reveal.values);
+    }
+
+    public SolverJob open(int pos,int value){
+        return open(new int[]{pos},new int[]{value});
+    }
+
+    /**
+     * Ranks the unopened boxes from the current estimate, see {@link MoveRecommender}. The samples
+     * are used to measure the information of each box as long as there are enough of them
+     * @param budgetNanos how long to spend evaluating boxes
+     * @return every unopened box, best move first
+     */
+    public List<MoveRecommender.Move> recommend(long budgetNanos){
+        long start = System.nanoTime();
+        RevealedState revealed;
+        double[] probs;
+        SamplePool pool;
+        synchronized (this){
+            revealed = openedSoFar.snapshot();
+            probs = test();
+            pool = samples.size() >= RECOMMEND_MIN_SAMPLES ? samples.snapshot() : null;
+        }
+        List<MoveRecommender.Move> ret = recommender.rank(revealed,probs,pool,Math.max(0,budgetNanos - (System.nanoTime() - start)));
+        metrics.increment("recommend");
+        metrics.add("recommend.evaluated",ret.stream().filter(m->!Double.isNaN(m.information)).count());
+        metrics.add("recommend.candidates",ret.size());
+        metrics.record("recommend.nanos",System.nanoTime() - start);
+        return ret;
+    }
+
+    /**
+     * While a move is being regenerated without results yet, this is the estimate from the samples
+     * kept, or from the mine density if there are none as in count only mode, with the boxes forced
+     * by the move set
      * @return an array stating in how many samples a given position contains mines
      */
     public synchronized double[] test(){
-        final int size = samples.size();
-        return IntStream.range(0,minesweeper.getDimTotal()).mapToDouble(ipos->{
-            byte pos = (byte)ipos;
-            long cnt =  samples.stream().filter(sample->Minesweeper.test(pos,sample)).count();
-            return (double)cnt/size;
-        }).toArray();
+        if (counts != null){
+            return counts.probabilities();
+        }
+        if (solved != null){
+            return solved.clone();
+        }
+        return estimate(deduced);
     }
 }
@@ -1,29 +1,49 @@
 package org.igor.minesweeper;
 
 
-import com.sun.istack.internal.Nullable;
+import javax.annotation.Nullable;
 
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
+/**
+ * A board of dimX rows by dimY columns. Positions are int indexes (x*dimY+y) and mine plans are
+ * bitsets stored in a long[], one bit per position.
+ */
 public class Minesweeper {
     private int dimX,dimY,numOfMines;
-    byte[] minePositions;
+    final long[] minePositions;
+    /** the number shown by each box of the board, -1 for a mine */
+    private final byte[] adjacentCounts;
+    /**
+     * Adjacency in compressed sparse row layout: the positions adjacent to pos are
+     * neighbors[neighborOffsets[pos]] .. neighbors[neighborOffsets[pos+1]-1]
+     */
+    final int[] neighborOffsets;
+    final int[] neighbors;
 
     public Minesweeper() {
         this(10,10,10);
     }
 
     public Minesweeper(int dimX,int dimY,int numOfMines) {
+        this(dimX,dimY,numOfMines,new SplittableRandom());
+    }
+
+    /**
+     * @param random the source of the mine positions, seed it for a reproducible board
+     */
+    public Minesweeper(int dimX,int dimY,int numOfMines,SplittableRandom random) {
         this.dimX = dimX;
         this.dimY = dimY;
         this.numOfMines = numOfMines;
-        if (dimX*dimY >=256){
-            throw new RuntimeException("cannot hold "+(dimX*dimY)+" positions in a byte");
+        if (numOfMines > dimX*dimY){
+            throw new IllegalArgumentException("cannot place "+numOfMines+" mines in "+(dimX*dimY)+" positions");
         }
-        minePositions = init(dimX, dimY, numOfMines,null);
+        neighborOffsets = neighborOffsets(dimX,dimY);
+        neighbors = neighbors(dimX,dimY,neighborOffsets);
+        minePositions = init(dimX, dimY, numOfMines,null,random);
+        adjacentCounts = adjacentCounts();
     }
 
     /**
@@ -31,87 +51,240 @@ public class Minesweeper {
      * @param dimX
      * @param dimY
      * @param numOfMines
-     * @param minePositions the array of mines to set
+     * @param minePositions the positions of the mines to set
      */
-    Minesweeper(int dimX,int dimY,int numOfMines,byte[] minePositions) {
+    Minesweeper(int dimX,int dimY,int numOfMines,int[] minePositions) {
         this.dimX = dimX;
         this.dimY = dimY;
         this.numOfMines = numOfMines;
-        if (dimX * dimY >= 256) {
-            throw new RuntimeException("cannot hold " + (dimX * dimY) + " positions in a byte");
-        }
-        this.minePositions = new byte[numOfMines];
-        System.arraycopy(minePositions,0,this.minePositions,0,numOfMines);
+        neighborOffsets = neighborOffsets(dimX,dimY);
+        neighbors = neighbors(dimX,dimY,neighborOffsets);
+        this.minePositions = plan(dimX*dimY,Arrays.copyOf(minePositions,numOfMines));
+        adjacentCounts = adjacentCounts();
+    }
 
+    /**
+     * @param minePositions the plan of the board, as read back by {@link #readFrom}
+     */
+    Minesweeper(int dimX,int dimY,int numOfMines,long[] minePositions) {
+        this.dimX = dimX;
+        this.dimY = dimY;
+        this.numOfMines = numOfMines;
+        neighborOffsets = neighborOffsets(dimX,dimY);
+        neighbors = neighbors(dimX,dimY,neighborOffsets);
+        this.minePositions = minePositions;
+        adjacentCounts = adjacentCounts();
     }
 
+    private byte[] adjacentCounts(){
+        byte[] ret = new byte[dimX*dimY];
+        for (int pos=0;pos<ret.length;pos++){
+            ret[pos] = (byte) getNumberOfAdjacentMines(pos,minePositions);
+        }
+        return ret;
+    }
 
-    static byte[] init(int dimX, int dimY, int numOfMines,@Nullable Map<Byte,Integer> revealed){
-        Map<Byte,Integer> openedSoFar = revealed!=null?revealed: Collections.emptyMap();
+    /**
+     * The boxes opened by one click, with the numbers they show (-1 for a mine), in the order they
+     * were reached
+     */
+    public static class Reveal {
+        public final int[] positions;
+        public final int[] values;
 
-        int totalSize = dimX*dimY;
-        int minesFound = (int) openedSoFar.values().stream().filter(v->v== -1).count();
-        int minesAvailable = numOfMines - minesFound;
-        int boxesOpen = openedSoFar.size();
-        int boxesAvailable = totalSize - boxesOpen;
+        Reveal(int[] positions, int[] values) {
+            this.positions = positions;
+            this.values = values;
+        }
 
-        byte[] boxesAvailablePositions = new byte[boxesAvailable];
-        AtomicInteger cnt = new AtomicInteger(0);
-        IntStream.range(0,totalSize)
-                .filter(i-> !openedSoFar.containsKey((byte)i))
-                .forEach(ip->{
-                    boxesAvailablePositions[cnt.getAndIncrement()] = (byte)ip;
-                });
+        public int size() {
+            return positions.length;
+        }
 
-        Set<Byte> soFar = openedSoFar.entrySet().stream().filter(e->e.getValue() == -1).map(Map.Entry::getKey).collect(Collectors.toSet());
+        /**
+         * @return true if the click hit a mine
+         */
+        public boolean isMine() {
+            return values.length > 0 && values[0] == -1;
+        }
 
+        public Map<Integer,Integer> toMap() {
+            Map<Integer,Integer> ret = new TreeMap<>();
+            for (int i=0;i<positions.length;i++){
+                ret.put(positions[i],values[i]);
+            }
+            return ret;
+        }
+    }
 
+    /**
+     * Opens pos and, if it shows no mines around it, flood fills the region around it breadth first
+     * @param opened bitset of the boxes open so far. The boxes opened by this click are added to it
+     * @return the boxes this click opened, none if pos was already open
+     */
+    public Reveal reveal(int pos,long[] opened){
+        if ((opened[pos >>> 6] & (1L << pos)) != 0){
+            return new Reveal(new int[0],new int[0]);
+        }
+        // The queue holds every box reached, so that it ends up being the positions of the result
+        int[] queue = new int[16];
+        int head = 0, tail = 0;
+        opened[pos >>> 6] |= 1L << pos;
+        queue[tail++] = pos;
+        while (head < tail){
+            int next = queue[head++];
+            if (adjacentCounts[next] != 0){
+                continue;
+            }
+            for (int i=neighborOffsets[next];i<neighborOffsets[next+1];i++){
+                int adj = neighbors[i];
+                long bit = 1L << adj;
+                if ((opened[adj >>> 6] & bit) == 0){
+                    opened[adj >>> 6] |= bit;
+                    if (tail == queue.length){
+                        queue = Arrays.copyOf(queue,Math.min(2*queue.length,adjacentCounts.length));
+                    }
+                    queue[tail++] = adj;
+                }
+            }
+        }
+        int[] positions = Arrays.copyOf(queue,tail);
+        int[] values = new int[tail];
+        for (int i=0;i<tail;i++){
+            values[i] = adjacentCounts[positions[i]];
+        }
+        return new Reveal(positions,values);
+    }
 
+    /**
+     * @return the number of bytes {@link #writeTo} takes
+     */
+    int bytes(){
+        return 12 + 8*minePositions.length;
+    }
 
-        byte[] minePositions = new byte[numOfMines];
+    /**
+     * Writes the dimensions, the number of mines and the plan of the board
+     */
+    void writeTo(ByteBuffer buffer){
+        buffer.putInt(dimX).putInt(dimY).putInt(numOfMines);
+        for (long word:minePositions){
+            buffer.putLong(word);
+        }
+    }
 
-        TreeSet<Byte> temp = new TreeSet<>(soFar);
-        for (int i =0;i<minesAvailable;i++){
-            int tmpIdx = (int)Math.floor(Math.random()*boxesAvailable);
-            byte tmp = boxesAvailablePositions[tmpIdx];
-            while (temp.contains(tmp)){
-                tmpIdx = (int)Math.floor(Math.random()*boxesAvailable);
-                tmp = boxesAvailablePositions[tmpIdx];
+    static Minesweeper readFrom(ByteBuffer buffer){
+        int dimX = buffer.getInt();
+        int dimY = buffer.getInt();
+        int numOfMines = buffer.getInt();
+        long[] minePositions = new long[words(dimX*dimY)];
+        for (int i=0;i<minePositions.length;i++){
+            minePositions[i] = buffer.getLong();
+        }
+        return new Minesweeper(dimX,dimY,numOfMines,minePositions);
+    }
+
+    /**
+     * @return the number of longs needed to hold a plan of dimTotal positions
+     */
+    static int words(int dimTotal){
+        return (dimTotal + 63) >>> 6;
+    }
+
+    /**
+     * @return a plan with mines at the given positions
+     */
+    static long[] plan(int dimTotal,int... positions){
+        long[] plan = new long[words(dimTotal)];
+        for (int pos:positions){
+            plan[pos >>> 6] |= 1L << pos;
+        }
+        return plan;
+    }
+
+    /**
+     * Places the mines that are not yet revealed uniformly over the unopened boxes, with a partial
+     * Fisher-Yates shuffle of their positions
+     * @param random not thread safe: give each thread its own, e.g. through split()
+     */
+    static long[] init(int dimX, int dimY, int numOfMines,@Nullable RevealedState revealed,SplittableRandom random){
+        int totalSize = dimX*dimY;
+        RevealedState openedSoFar = revealed!=null?revealed: new RevealedState(totalSize);
+
+        int minesAvailable = numOfMines - openedSoFar.getMinesFound();
+        int boxesAvailable = openedSoFar.getAvailable();
+
+        int[] boxesAvailablePositions = new int[boxesAvailable];
+        long[] minePositions = openedSoFar.flagged.clone();
+        int cnt = 0;
+        for (int pos=0;pos<totalSize;pos++){
+            if (!openedSoFar.isOpen(pos)){
+                boxesAvailablePositions[cnt++] = pos;
             }
-            temp.add(tmp);
         }
-        Iterator<Byte> iterator = temp.iterator();
-        for (int i=0;i<numOfMines;i++){
-            minePositions[i] = iterator.next();
+
+        for (int i =0;i<minesAvailable;i++){
+            int j = i + random.nextInt(boxesAvailable - i);
+            int tmp = boxesAvailablePositions[j];
+            boxesAvailablePositions[j] = boxesAvailablePositions[i];
+            boxesAvailablePositions[i] = tmp;
+            minePositions[tmp >>> 6] |= 1L << tmp;
         }
         return minePositions;
     }
 
-    public byte getPos(int x,int y){
+    public int getPos(int x,int y){
         if (x >= dimX || y >= dimY ||x <0 || y<0){
             throw new IllegalArgumentException();
         }
-        return (byte) (x*dimX+y);
+        return x*dimY+y;
+    }
+
+    /**
+     * @return a copy of the positions adjacent to pos. Hot paths should go through neighborOffsets
+     * and neighbors instead
+     */
+    int[] adjacent(int pos){
+        return Arrays.copyOfRange(neighbors,neighborOffsets[pos],neighborOffsets[pos+1]);
+    }
+
+    static int[] neighborOffsets(int dimX,int dimY){
+        int[] offsets = new int[dimX*dimY+1];
+        for (int pos=0;pos<dimX*dimY;pos++){
+            int xPos = pos/dimY;
+            int yPos = pos % dimY;
+            int rows = (xPos > 0 ? 1 : 0) + 1 + (xPos < dimX-1 ? 1 : 0);
+            int cols = (yPos > 0 ? 1 : 0) + 1 + (yPos < dimY-1 ? 1 : 0);
+            offsets[pos+1] = offsets[pos] + rows*cols - 1;
+        }
+        return offsets;
     }
 
-    byte[] adjacent(byte pos){
-        return adjacent(pos,dimX,dimY);
+    static int[] neighbors(int dimX,int dimY,int[] offsets){
+        int[] neighbors = new int[offsets[dimX*dimY]];
+        for (int pos=0;pos<dimX*dimY;pos++){
+            adjacent(pos,dimX,dimY,neighbors,offsets[pos]);
+        }
+        return neighbors;
     }
 
-    static byte[] adjacent(byte pos,int dimX,int dimY){
-        byte xPos = (byte) (pos/dimX);
-        byte yPos = (byte)(pos % dimX);
+    /**
+     * Writes the positions adjacent to pos into ret, starting at offset
+     * @return the number of positions written
+     */
+    static int adjacent(int pos,int dimX,int dimY,int[] ret,int offset){
+        int xPos = pos/dimY;
+        int yPos = pos % dimY;
 
-        int cnt = 0;
-        byte[] ret = new byte[8];
+        int cnt = offset;
 
         for (int i=-1;i<=1;i++){
-            byte nXPos= (byte) (xPos + i);
+            int nXPos= xPos + i;
             if (nXPos<0 || nXPos > dimX-1){
                 continue;
             }
             for (int j=-1;j<=1;j++){
-                byte nYPos= (byte) (yPos + j);
+                int nYPos= yPos + j;
                 if (nYPos<0 || nYPos > dimY-1){
                     continue;
                 }
@@ -119,12 +292,11 @@ public class Minesweeper {
                 if (nXPos == xPos && nYPos == yPos){
                     continue;
                 }
-                byte nPos = (byte) (nXPos*dimX+nYPos);
-                ret[cnt++] = nPos;
+                ret[cnt++] = nXPos*dimY+nYPos;
             }
         }
 
-        return Arrays.copyOfRange(ret,0,cnt);
+        return cnt - offset;
     }
 
     public int getDimX() {
@@ -143,59 +315,58 @@ public class Minesweeper {
         return numOfMines;
     }
 
-    public int getNumberOfAdjacentMines(byte pos){
-        return getNumberOfAdjacentMines(pos,dimX,dimY,minePositions);
+    public int getNumberOfAdjacentMines(int pos){
+        return adjacentCounts[pos];
     }
 
-    public static int getNumberOfAdjacentMines(byte pos,int dimX,int dimY,byte[] minePositions){
+    public int getNumberOfAdjacentMines(int pos,long[] plan){
 
-        if (test(pos,minePositions)){
+        if (test(pos,plan)){
             return -1;
         }else{
             int cnt = 0;
-            byte[] adjs = adjacent(pos,dimX,dimY);
-            for (byte adj:adjs){
-                if (test(adj,minePositions)){
-                    cnt ++;
-                }
+            for (int i=neighborOffsets[pos];i<neighborOffsets[pos+1];i++){
+                int adj = neighbors[i];
+                cnt += (int) (plan[adj >>> 6] >>> adj) & 1;
             }
             return cnt;
         }
     }
 
-    public boolean test(byte pos){
+    public boolean test(int pos){
         return test(pos,minePositions);
     }
 
-    public static boolean test(byte pos,byte[] plan){
-        if (Arrays.binarySearch(plan,pos) >=0){
-            //Found mine
-            return true;
-        }else{
-            return false;
-        }
+    public static boolean test(int pos,long[] plan){
+        return (plan[pos >>> 6] & (1L << pos)) != 0;
     }
 
-    public boolean matches(byte pos,int value,byte[] plan){
-        if (test(pos,plan)){
-            return value == -1;
+    /**
+     * @param value the number shown at pos, -1 for a mine or {@link Deducer#SAFE}
+     */
+    public boolean matches(int pos,int value,long[] plan){
+        if (value == Deducer.SAFE){
+            return !test(pos,plan);
         }
-        byte[] adjs = adjacent(pos);
-        int _value = 0;
-        for (byte adj:adjs){
-            if (test(adj,plan)){
-                _value ++;
+        return getNumberOfAdjacentMines(pos,plan) == value;
+    }
+
+    public boolean matches(Map<Integer,Integer> revealed, long[] plan){
+        for (Map.Entry<Integer,Integer> p:revealed.entrySet()){
+            if (!matches(p.getKey(),p.getValue(),plan)){
+                return false;
             }
         }
-        return value == _value;
+        return true;
     }
 
-    public boolean matches(Map<Byte,Integer> revealed, byte[] plan){
-        return revealed.entrySet()
-                .stream()
-                .allMatch(p->{
-                    return this.matches(p.getKey(),p.getValue(),plan);
-                });
+    public boolean matches(RevealedState revealed, long[] plan){
+        for (int pos = revealed.next(0);pos >= 0;pos = revealed.next(pos+1)){
+            if (!matches(pos,revealed.get(pos),plan)){
+                return false;
+            }
+        }
+        return true;
     }
 
 
@@ -6,7 +6,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.stream.IntStream;
 
 public class MinesweeperController extends JPanel {
@@ -32,90 +31,131 @@ public class MinesweeperController extends JPanel {
     private Minesweeper minesweeper;
     private MineSweeperSampler mineSweeperSampler;
     private ButtonWithPB[] buttons;
+    /** bitset of the boxes opened so far */
+    private long[] opened;
+
+    private SolverJob solverJob;
+
+    /** frames per second of the probability display */
+    static final int FPS = 30;
+
+    /**
+     * Probabilities ready to be painted, along with the average probability around each box and
+     * the boxes whose display changed since the previous frame
+     */
+    static class Frame {
+        final double[] probs;
+        final double[] avProbs;
+        final BitSet changed;
+
+        Frame(double[] probs, double[] avProbs, BitSet changed) {
+            this.probs = probs;
+            this.avProbs = avProbs;
+            this.changed = changed;
+        }
+    }
+
+    private final Object frameLock = new Object();
+    /** the frame not painted yet, null if none */
+    private Frame pending;
+    /** the last frame handed over, to tell what changed */
+    private Frame published;
+
+    /**
+     * Called by the solver for every snapshot: prepares the frame off the EDT. If the previous one
+     * was not painted yet it is replaced, keeping track of what it changed
+     */
+    void publish(double[] probs){
+        double[] avProbs = new double[probs.length];
+        for (int i=0;i<probs.length;i++){
+            double sum = 0;
+            for (int z=minesweeper.neighborOffsets[i];z<minesweeper.neighborOffsets[i+1];z++){
+                sum += probs[minesweeper.neighbors[z]];
+            }
+            avProbs[i] = sum/(minesweeper.neighborOffsets[i+1] - minesweeper.neighborOffsets[i]);
+        }
+        synchronized (frameLock){
+            BitSet changed = new BitSet(probs.length);
+            for (int i=0;i<probs.length;i++){
+                if (published == null || shown(probs[i]) != shown(published.probs[i]) || shown(avProbs[i]) != shown(published.avProbs[i])){
+                    changed.set(i);
+                }
+            }
+            if (pending != null){
+                changed.or(pending.changed);
+            }
+            published = new Frame(probs,avProbs,changed);
+            pending = published;
+        }
+    }
 
-    private CompletableFuture<Void> probCalculatorCF;
+    /**
+     * @return the frame waiting to be painted, null if none
+     */
+    Frame pending(){
+        synchronized (frameLock){
+            return pending;
+        }
+    }
+
+    /**
+     * @return p as displayed, in tenths of a percent
+     */
+    private static long shown(double p){
+        return Math.round(1000*p);
+    }
+
+    /**
+     * Runs on the EDT at FPS: updates the boxes of the pending frame that changed
+     */
+    void paintFrame(){
+        Frame frame;
+        synchronized (frameLock){
+            frame = pending;
+            pending = null;
+        }
+        if (frame == null){
+            return;
+        }
+        for (int i=frame.changed.nextSetBit(0);i>=0;i=frame.changed.nextSetBit(i+1)){
+            double p = frame.probs[i];
+            ButtonWithPB _button = buttons[i];
+            _button.setToolTipText(String.format("%.1f\navProb:%.1f",100*p,100*frame.avProbs[i]));
+            _button.setProgress((int) shown(p));
+        }
+    }
 
     class BtnActionListener implements ActionListener{
-        public BtnActionListener(byte pos, ButtonWithPB button) {
+        public BtnActionListener(int pos, ButtonWithPB button) {
             this.pos = pos;
             this.button = button;
 
         }
 
-        private byte pos;
+        private int pos;
         private ButtonWithPB button;
 
 
-        private void openRec(byte pos,Map<Byte,Integer> map){
-            byte[] adjs = minesweeper.adjacent(pos);
-            for (byte adj:adjs){
-                if (map.containsKey(adj)){
-                    continue;
-                }
-                int value = minesweeper.getNumberOfAdjacentMines(adj);
-                map.put(adj,value);
-                if (value == 0){
-                    openRec(adj,map);
-                }
-            }
-        }
-
         @Override
         public void actionPerformed(ActionEvent actionEvent) {
-
-            int mines = minesweeper.getNumberOfAdjacentMines(pos);
-
-            if (probCalculatorCF!=null){
-                probCalculatorCF.cancel(true);
+            Minesweeper.Reveal reveal = minesweeper.reveal(pos,opened);
+            if (reveal.size() == 0){
+                return;
             }
 
-            if (mines == 0) {
-                Map<Byte,Integer> toOpen = new TreeMap<>();
-                toOpen.put(pos,mines);
-                openRec(pos, toOpen);
-                toOpen.forEach((k,v)->{
-                    ButtonWithPB b = buttons[k];
-                    b.disable();
-                    b.setLabel(""+v);
-                    b.setBackground(Color.GRAY);
-                });
-                probCalculatorCF = CompletableFuture.runAsync(()->mineSweeperSampler.open(toOpen));
-
-            }else {
-                button.setLabel(""+mines);
-                button.disable();
-                if(mines == -1){
-                    button.setBackground(Color.RED);
-                }else {
-                    button.setBackground(Color.GRAY);
-                }
-                probCalculatorCF = CompletableFuture.runAsync(()->mineSweeperSampler.open(pos, mines));
+            if (solverJob!=null){
+                solverJob.cancel();
             }
 
+            for (int i=0;i<reveal.size();i++){
+                ButtonWithPB b = buttons[reveal.positions[i]];
+                b.disable();
+                b.setLabel(""+reveal.values[i]);
+                b.setBackground(reveal.values[i] == -1 ? Color.RED : Color.GRAY);
+            }
+            solverJob = mineSweeperSampler.open(reveal);
 
-            probCalculatorCF.thenAccept(_void->{
-                double[] probs = mineSweeperSampler.test();
-                EventQueue.invokeLater(()->{
-                    IntStream.range(0,buttons.length).forEach(i->{
-                        double p = probs[i];
-
-                        byte[] adjs = minesweeper.adjacent((byte)i);
-                        double avProb = IntStream.range(0,adjs.length).mapToDouble(z->probs[adjs[z]]).average().getAsDouble();
-                        ButtonWithPB _button = buttons[i];
-
-                        Color hsbColor = Color.getHSBColor(1-(float)p,0.5f,1);
-                        _button.setToolTipText(""+(100*p)+"\navProb:"+(100*avProb));
-                        _button.setProgress((int)(1000*p));
-                        //_button.setBackground(hsbColor);
-                    });
-                });
-            });
-
-
-
-
-
-
+            solverJob.onSnapshot(MinesweeperController.this::publish);
         }
     }
 
@@ -123,6 +163,7 @@ public class MinesweeperController extends JPanel {
         System.out.println("starting");
         minesweeper = new Minesweeper(dimX,dimY,numOfMines);
         buttons = new ButtonWithPB[dimX*dimY];
+        opened = new long[Minesweeper.words(dimX*dimY)];
         mineSweeperSampler = new MineSweeperSampler(100_000,minesweeper);
         System.out.println("Ready to paint");
 
@@ -131,8 +172,7 @@ public class MinesweeperController extends JPanel {
 
         GridLayout gridLayout = new GridLayout(dimX,dimY);
         mwPanel.setLayout(gridLayout);
-        IntStream.range(0,dimX*dimY).forEach(iPos->{
-            byte pos = (byte)iPos;
+        IntStream.range(0,dimX*dimY).forEach(pos->{
             ButtonWithPB button =  new ButtonWithPB();
             int val = minesweeper.getNumberOfAdjacentMines(pos);
 
@@ -140,12 +180,13 @@ public class MinesweeperController extends JPanel {
 
 
             button.addActionListener(new BtnActionListener(pos,button));
-            buttons[iPos] = button;
+            buttons[pos] = button;
             mwPanel.add(button);
         });
 
         this.setLayout(new BorderLayout());
         this.add(mwPanel,BorderLayout.CENTER);
+        new javax.swing.Timer(1000/FPS,e->paintFrame()).start();
         System.out.println("ready");
     }
 
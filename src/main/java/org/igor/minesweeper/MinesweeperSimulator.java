@@ -0,0 +1,218 @@
+package org.igor.minesweeper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Headless runner: plays full games without a display, always opening the box least likely to
+ * hold a mine according to {@link MineSweeperSampler#test()}, or the one recommended by
+ * {@link MineSweeperSampler#recommend(long)} within MS milliseconds if --recommend is given, and
+ * reports win rate, throughput and solver latency.
+ *
+ * Usage: MinesweeperSimulator [--games N] [--dimX X] [--dimY Y] [--mines M] [--samples S]
+ * [--threads T] [--seed SEED] [--metrics true] [--cache FILE] [--recommend MS]
+ *
+ * The games share a cache of solved frontier components, loaded from and saved back to FILE if given.
+ */
+public class MinesweeperSimulator {
+    private static final Logger LOG = LoggerFactory.getLogger(MinesweeperSimulator.class);
+
+    private final int dimX, dimY, numOfMines, numOfSamples;
+    private final SplittableRandom random;
+    private final long recommendNanos;
+    private final SolverMetrics metrics = new SolverMetrics();
+    private final ComponentCache cache = new ComponentCache(MineSweeperSampler.CACHE_BYTES);
+
+    public MinesweeperSimulator(int dimX, int dimY, int numOfMines, int numOfSamples, SplittableRandom random) {
+        this(dimX, dimY, numOfMines, numOfSamples, random, 0);
+    }
+
+    /**
+     * @param recommendNanos the time budget of each move recommendation, 0 to open the safest box instead
+     */
+    public MinesweeperSimulator(int dimX, int dimY, int numOfMines, int numOfSamples, SplittableRandom random, long recommendNanos) {
+        this.dimX = dimX;
+        this.dimY = dimY;
+        this.numOfMines = numOfMines;
+        this.numOfSamples = numOfSamples;
+        this.random = random;
+        this.recommendNanos = recommendNanos;
+    }
+
+    /**
+     * @return the metrics of the samplers of all the games played
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ComponentCache getCache() {
+        return cache;
+    }
+
+    /**
+     * The outcome of one game
+     */
+    public static class Result {
+        final boolean won;
+        final int moves;
+        /** nanoseconds from each open() to its final probabilities */
+        final long[] latencies;
+
+        Result(boolean won, int moves, long[] latencies) {
+            this.won = won;
+            this.moves = moves;
+            this.latencies = latencies;
+        }
+
+        public boolean isWon() {
+            return won;
+        }
+
+        public int getMoves() {
+            return moves;
+        }
+    }
+
+    /**
+     * Plays one game to the end, regenerating on the common pool
+     * @param random not shared with other threads
+     */
+    public Result play(SplittableRandom random) throws InterruptedException, ExecutionException {
+        return play(random, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Plays one game to the end
+     * @param random  not shared with other threads
+     * @param solvers where the sampler regenerates
+     */
+    public Result play(SplittableRandom random, Executor solvers) throws InterruptedException, ExecutionException {
+        Minesweeper minesweeper = new Minesweeper(dimX, dimY, numOfMines, random.split());
+        MineSweeperSampler sampler = new MineSweeperSampler(numOfSamples, minesweeper, false, random.split(), metrics, cache, solvers);
+        long[] opened = new long[Minesweeper.words(minesweeper.getDimTotal())];
+        int toOpen = minesweeper.getDimTotal() - numOfMines;
+        List<Long> latencies = new ArrayList<>();
+
+        double[] probs = sampler.test();
+        int moves = 0;
+        while (true){
+            int pos = recommendNanos > 0 ? sampler.recommend(recommendNanos).get(0).pos : safest(probs, opened, random);
+            moves++;
+            Minesweeper.Reveal reveal = minesweeper.reveal(pos, opened);
+            if (reveal.isMine()){
+                return new Result(false, moves, toArray(latencies));
+            }
+            toOpen -= reveal.size();
+            if (toOpen == 0){
+                return new Result(true, moves, toArray(latencies));
+            }
+            long start = System.nanoTime();
+            probs = sampler.open(reveal).result().get();
+            latencies.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the unopened position with the lowest probability, ties broken at random
+     */
+    static int safest(double[] probs, long[] opened, SplittableRandom random) {
+        int ret = -1;
+        int ties = 0;
+        for (int pos = 0; pos < probs.length; pos++){
+            if (Minesweeper.test(pos, opened)){
+                continue;
+            }
+            if (ret == -1 || probs[pos] < probs[ret]){
+                ret = pos;
+                ties = 1;
+            }else if (probs[pos] == probs[ret] && random.nextInt(++ties) == 0){
+                ret = pos;
+            }
+        }
+        return ret;
+    }
+
+    private static long[] toArray(List<Long> list) {
+        return list.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Plays games on threads in parallel. The games wait for their solver on other threads, as many
+     * of them, so that the solver gets the parallelism asked for
+     */
+    public List<Result> run(int games, int threads) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ForkJoinPool solvers = new ForkJoinPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int i = 0; i < games; i++){
+                SplittableRandom gameRandom = random.split();
+                futures.add(executor.submit(() -> play(gameRandom, solvers)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures){
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+            solvers.shutdown();
+        }
+    }
+
+    static String report(List<Result> results, long elapsedNanos) {
+        long wins = results.stream().filter(Result::isWon).count();
+        long moves = results.stream().mapToLong(Result::getMoves).sum();
+        long[] latencies = results.stream().flatMapToLong(r -> Arrays.stream(r.latencies)).sorted().toArray();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("games: %d, won: %d (%.2f%%)%n", results.size(), wins, 100.0 * wins / results.size()));
+        sb.append(String.format("moves: %d, %.1f moves/s%n", moves, moves / (elapsedNanos / 1e9)));
+        if (latencies.length > 0){
+            sb.append(String.format("solver latency ms: p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%n",
+                    percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                    latencies[latencies.length - 1] / 1e6));
+        }
+        return sb.toString();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2){
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        int games = Integer.parseInt(options.getOrDefault("games", "100"));
+        int dimX = Integer.parseInt(options.getOrDefault("dimX", "9"));
+        int dimY = Integer.parseInt(options.getOrDefault("dimY", "9"));
+        int mines = Integer.parseInt(options.getOrDefault("mines", "10"));
+        int samples = Integer.parseInt(options.getOrDefault("samples", "10000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "" + Runtime.getRuntime().availableProcessors()));
+        SplittableRandom random = options.containsKey("seed") ? new SplittableRandom(Long.parseLong(options.get("seed"))) : new SplittableRandom();
+
+        LOG.info("Playing {} games of {}x{}/{} on {} threads", games, dimX, dimY, mines, threads);
+        long start = System.nanoTime();
+        long recommendNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(options.getOrDefault("recommend", "0")));
+        MinesweeperSimulator simulator = new MinesweeperSimulator(dimX, dimY, mines, samples, random, recommendNanos);
+        Path cacheFile = options.containsKey("cache") ? Paths.get(options.get("cache")) : null;
+        if (cacheFile != null){
+            simulator.getCache().load(cacheFile);
+        }
+        List<Result> results = simulator.run(games, threads);
+        if (cacheFile != null){
+            simulator.getCache().save(cacheFile);
+        }
+        System.out.print(report(results, System.nanoTime() - start));
+        if (Boolean.parseBoolean(options.get("metrics"))){
+            System.out.println(simulator.getMetrics().toJson());
+        }
+    }
+}
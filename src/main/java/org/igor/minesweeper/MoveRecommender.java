@@ -0,0 +1,160 @@
+package org.igor.minesweeper;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Ranks the unopened boxes as next moves, by how likely they are to be safe and by how much opening
+ * them is expected to tell.
+ *
+ * The information of a box is the entropy, in bits, of the number it would show if safe: the
+ * expected log of the factor by which revealing it shrinks the solutions. It is measured over the
+ * samples of a pool when one is given, otherwise estimated from the probabilities, taking the
+ * neighbors as independent.
+ *
+ * The boxes whose risk is within {@link #RISK_TOLERANCE} of the lowest come first, most informative
+ * first, then the others by risk. Boxes are evaluated in parallel, the safest first, until the time
+ * budget runs out: those left have no information and rank by risk alone.
+ */
+public class MoveRecommender {
+    /** relative extra risk worth taking for more information. A box known to be safe is never traded */
+    static final double RISK_TOLERANCE = 0.05;
+
+    /**
+     * A candidate move
+     */
+    public static class Move {
+        public final int pos;
+        /** probability that pos holds no mine */
+        public final double safety;
+        /** entropy of the number pos would show, NaN if it was not evaluated within the budget */
+        public final double information;
+
+        Move(int pos, double safety, double information) {
+            this.pos = pos;
+            this.safety = safety;
+            this.information = information;
+        }
+
+        @Override
+        public String toString() {
+            return pos + " safety " + safety + " information " + information;
+        }
+    }
+
+    private final Minesweeper minesweeper;
+    private final Executor executor;
+    private final int parallelism;
+
+    /**
+     * @param parallelism the number of evaluations running at the same time, one of which runs on the
+     *                    calling thread
+     */
+    public MoveRecommender(Minesweeper minesweeper, Executor executor, int parallelism) {
+        this.minesweeper = minesweeper;
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @param revealed    the boxes opened so far, which are not candidates
+     * @param probs       as returned by {@link MineSweeperSampler#test()}
+     * @param pool        samples matching revealed, null to estimate from probs
+     * @param budgetNanos how long to spend evaluating
+     * @return every unopened box, best move first
+     */
+    public List<Move> rank(RevealedState revealed, double[] probs, @Nullable SamplePool pool, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int[] candidates = new int[revealed.getAvailable()];
+        int cnt = 0;
+        for (int pos = 0; pos < probs.length; pos++){
+            if (!revealed.isOpen(pos)){
+                candidates[cnt++] = pos;
+            }
+        }
+        // safest first, so that they are the ones evaluated if the budget runs out
+        int[] order = Arrays.stream(candidates).boxed()
+                .sorted(Comparator.comparingDouble(pos -> probs[pos]))
+                .mapToInt(Integer::intValue).toArray();
+        double[] information = new double[probs.length];
+        Arrays.fill(information, Double.NaN);
+
+        int tasks = Math.min(parallelism, Math.max(1, order.length));
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks - 1];
+        for (int t = 1; t < tasks; t++){
+            int first = t;
+            futures[t - 1] = CompletableFuture.runAsync(() -> evaluate(order, first, tasks, revealed, probs, pool, information, deadline), executor);
+        }
+        evaluate(order, 0, tasks, revealed, probs, pool, information, deadline);
+        CompletableFuture.allOf(futures).join();
+
+        List<Move> ret = new ArrayList<>(order.length);
+        for (int pos : order){
+            ret.add(new Move(pos, 1 - probs[pos], information[pos]));
+        }
+        if (ret.isEmpty()){
+            return ret;
+        }
+        double maxRisk = (1 - ret.get(0).safety) * (1 + RISK_TOLERANCE);
+        Comparator<Move> byInformation = Comparator.comparingDouble(m -> Double.isNaN(m.information) ? -1 : m.information);
+        ret.sort(Comparator.comparing((Move m) -> 1 - m.safety > maxRisk)
+                .thenComparing((a, b) -> 1 - a.safety > maxRisk ? 0 : byInformation.compare(b, a))
+                .thenComparing(Comparator.comparingDouble((Move m) -> m.safety).reversed())
+                .thenComparing(byInformation.reversed())
+                .thenComparingInt(m -> m.pos));
+        return ret;
+    }
+
+    /**
+     * Evaluates order[first], order[first + step]... until the deadline
+     */
+    private void evaluate(int[] order, int first, int step, RevealedState revealed, double[] probs,
+                          @Nullable SamplePool pool, double[] information, long deadline) {
+        for (int i = first; i < order.length && System.nanoTime() < deadline; i += step){
+            int pos = order[i];
+            information[pos] = entropy(pool != null ? distribution(pool.numbers(pos)) : distribution(pos, revealed, probs));
+        }
+    }
+
+    /**
+     * @return the distribution of the number pos shows, as if its neighbors held mines independently
+     */
+    double[] distribution(int pos, RevealedState revealed, double[] probs) {
+        int from = minesweeper.neighborOffsets[pos];
+        int to = minesweeper.neighborOffsets[pos + 1];
+        double[] ret = new double[to - from + 1];
+        ret[0] = 1;
+        for (int i = from; i < to; i++){
+            int adj = minesweeper.neighbors[i];
+            double p = revealed.isOpen(adj) ? (revealed.isFlagged(adj) ? 1 : 0) : probs[adj];
+            for (int k = i - from + 1; k > 0; k--){
+                ret[k] = ret[k] * (1 - p) + ret[k - 1] * p;
+            }
+            ret[0] *= 1 - p;
+        }
+        return ret;
+    }
+
+    static double[] distribution(double[] numbers) {
+        double total = Arrays.stream(numbers).sum();
+        return Arrays.stream(numbers).map(n -> total == 0 ? 0 : n / total).toArray();
+    }
+
+    /**
+     * @return in bits
+     */
+    static double entropy(double[] distribution) {
+        double ret = 0;
+        for (double q : distribution){
+            if (q > 0){
+                ret -= q * Math.log(q);
+            }
+        }
+        return ret / Math.log(2);
+    }
+}
@@ -0,0 +1,223 @@
+package org.igor.minesweeper;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The boxes revealed so far: the number each opened box shows, -1 for a known (flagged) mine, or
+ * {@link Deducer#SAFE} for a box known to be safe.
+ *
+ * Values are kept in an array indexed by position, next to bitsets of the opened and the flagged
+ * boxes laid out like plans, and the counts of both are kept up to date as boxes are put. The
+ * engines thus neither box values nor scan the board to know how many mines are left over how many
+ * boxes. A sampler updates its own state move by move and hands a {@link #snapshot()} to the
+ * engines, which may share it between threads as it never changes.
+ */
+public class RevealedState {
+    private final int dimTotal;
+    private final int[] values;
+    /** bitset of the boxes with a value, in the layout of plans */
+    final long[] opened;
+    /** bitset of the boxes known to be mines */
+    final long[] flagged;
+    private int size;
+    private int minesFound;
+    private boolean frozen;
+
+    public RevealedState(int dimTotal) {
+        this.dimTotal = dimTotal;
+        this.values = new int[dimTotal];
+        this.opened = new long[Minesweeper.words(dimTotal)];
+        this.flagged = new long[Minesweeper.words(dimTotal)];
+    }
+
+    private RevealedState(RevealedState other) {
+        this.dimTotal = other.dimTotal;
+        this.values = other.values.clone();
+        this.opened = other.opened.clone();
+        this.flagged = other.flagged.clone();
+        this.size = other.size;
+        this.minesFound = other.minesFound;
+    }
+
+    /**
+     * @param revealed position to value, -1 for a (known) mine
+     */
+    public static RevealedState of(int dimTotal, Map<Integer, Integer> revealed) {
+        RevealedState ret = new RevealedState(dimTotal);
+        ret.putAll(revealed);
+        return ret;
+    }
+
+    public int getDimTotal() {
+        return dimTotal;
+    }
+
+    /**
+     * @return the number of boxes with a value
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getMinesFound() {
+        return minesFound;
+    }
+
+    /**
+     * @return the number of boxes without a value
+     */
+    public int getAvailable() {
+        return dimTotal - size;
+    }
+
+    public boolean isOpen(int pos) {
+        return Minesweeper.test(pos, opened);
+    }
+
+    public boolean isFlagged(int pos) {
+        return Minesweeper.test(pos, flagged);
+    }
+
+    /**
+     * @return the value at pos, meaningless if pos is not open
+     */
+    public int get(int pos) {
+        return values[pos];
+    }
+
+    /**
+     * @return the first open position from pos on, -1 if there is none. Open boxes are walked with
+     * {@code for (int pos = state.next(0); pos >= 0; pos = state.next(pos + 1))}
+     */
+    public int next(int pos) {
+        if (pos >= dimTotal){
+            return -1;
+        }
+        int w = pos >>> 6;
+        long word = opened[w] & (-1L << pos);
+        while (word == 0){
+            if (++w == opened.length){
+                return -1;
+            }
+            word = opened[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return the open positions, in ascending order
+     */
+    public int[] positions() {
+        int[] ret = new int[size];
+        int cnt = 0;
+        for (int pos = next(0); pos >= 0; pos = next(pos + 1)){
+            ret[cnt++] = pos;
+        }
+        return ret;
+    }
+
+    /**
+     * Sets the value of pos, replacing the one it had if it was open
+     * @throws IllegalStateException if this is a snapshot
+     */
+    public void put(int pos, int value) {
+        if (frozen){
+            throw new IllegalStateException("Snapshots can not be changed");
+        }
+        if (!isOpen(pos)){
+            opened[pos >>> 6] |= 1L << pos;
+            size++;
+        }else if (values[pos] == -1){
+            flagged[pos >>> 6] &= ~(1L << pos);
+            minesFound--;
+        }
+        values[pos] = value;
+        if (value == -1){
+            flagged[pos >>> 6] |= 1L << pos;
+            minesFound++;
+        }
+    }
+
+    public void putAll(int[] positions, int[] values) {
+        for (int i = 0; i < positions.length; i++){
+            put(positions[i], values[i]);
+        }
+    }
+
+    public void putAll(RevealedState other) {
+        for (int pos = other.next(0); pos >= 0; pos = other.next(pos + 1)){
+            put(pos, other.values[pos]);
+        }
+    }
+
+    public void putAll(Map<Integer, Integer> revealed) {
+        revealed.forEach(this::put);
+    }
+
+    /**
+     * @return a copy that can be changed
+     */
+    public RevealedState copy() {
+        return new RevealedState(this);
+    }
+
+    /**
+     * @return a copy that can not be changed, or this if it can not already
+     */
+    public RevealedState snapshot() {
+        return frozen ? this : copy().freeze();
+    }
+
+    /**
+     * Makes this read only
+     */
+    RevealedState freeze() {
+        frozen = true;
+        return this;
+    }
+
+    public Map<Integer, Integer> toMap() {
+        Map<Integer, Integer> ret = new TreeMap<>();
+        for (int pos = next(0); pos >= 0; pos = next(pos + 1)){
+            ret.put(pos, values[pos]);
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof RevealedState)){
+            return false;
+        }
+        RevealedState other = (RevealedState) o;
+        if (dimTotal != other.dimTotal || !Arrays.equals(opened, other.opened)){
+            return false;
+        }
+        for (int pos = next(0); pos >= 0; pos = next(pos + 1)){
+            if (values[pos] != other.values[pos]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int ret = Arrays.hashCode(opened);
+        for (int pos = next(0); pos >= 0; pos = next(pos + 1)){
+            ret = 31 * ret + values[pos];
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,503 @@
+package org.igor.minesweeper;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packed store of mine plans.
+ *
+ * Samples are kept column-major: columns[pos] is a bitset over the samples, with bit i set when
+ * sample i has a mine at pos. Removed samples are only cleared from the alive bitset, so filtering
+ * is a matter of and-ing masks, and the per position frequencies are popcounts over a column.
+ *
+ * Samples can carry an importance weight, given as a log, in which case the frequencies are
+ * weighted.
+ *
+ * A {@link #snapshot()} shares the columns and the weights of its pool. The pool only sets bits
+ * of slots added after it in shared arrays, and rewrites the slots it has into new arrays, so the
+ * snapshot can be read by other threads while the pool keeps changing.
+ */
+public class SamplePool {
+    /** words of samples retain() checks together, so that a block whose samples are all removed is skipped */
+    static final int BLOCK_WORDS = 16;
+
+    private final Minesweeper minesweeper;
+    private long[][] columns;
+    private long[] alive;
+    /** log of the weight of each slot */
+    private double[] logWeights;
+    /** false as long as every weight is 1 */
+    private boolean weighted;
+    /** number of slots used, alive or not */
+    private int slots;
+    private int size;
+    private boolean frozen;
+
+    public SamplePool(Minesweeper minesweeper) {
+        this(minesweeper, 64);
+    }
+
+    public SamplePool(Minesweeper minesweeper, int capacity) {
+        this.minesweeper = minesweeper;
+        int words = Math.max(1, (capacity + 63) >>> 6);
+        columns = new long[minesweeper.getDimTotal()][words];
+        alive = new long[words];
+        logWeights = new double[words << 6];
+    }
+
+    private SamplePool(Minesweeper minesweeper, long[][] columns, long[] alive, double[] logWeights) {
+        this.minesweeper = minesweeper;
+        this.columns = columns;
+        this.alive = alive;
+        this.logWeights = logWeights;
+    }
+
+    /**
+     * @return a read only view of the samples in the pool now, which costs a copy of the alive mask
+     * only. Later changes to this pool do not show in it
+     */
+    public SamplePool snapshot() {
+        if (frozen){
+            return this;
+        }
+        SamplePool ret = new SamplePool(minesweeper, columns.clone(), alive.clone(), logWeights);
+        ret.weighted = weighted;
+        ret.slots = slots;
+        ret.size = size;
+        ret.frozen = true;
+        return ret;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen){
+            throw new IllegalStateException("Snapshots can not be changed");
+        }
+    }
+
+    /**
+     * @return an independent copy of this pool
+     */
+    public SamplePool copy() {
+        SamplePool ret = new SamplePool(minesweeper, capacity());
+        for (int pos = 0; pos < columns.length; pos++){
+            System.arraycopy(columns[pos], 0, ret.columns[pos], 0, alive.length);
+        }
+        System.arraycopy(alive, 0, ret.alive, 0, alive.length);
+        System.arraycopy(logWeights, 0, ret.logWeights, 0, slots);
+        ret.weighted = weighted;
+        ret.slots = slots;
+        ret.size = size;
+        return ret;
+    }
+
+    /**
+     * @return the number of bytes {@link #writeTo} takes
+     */
+    long bytes() {
+        return 13 + 8L * alive.length * (columns.length + 1) + (weighted ? 8L * slots : 0);
+    }
+
+    /**
+     * Writes the pool as it is packed in memory: slots, size, words per column, whether samples are
+     * weighted, the alive mask, the columns and the log weights if any
+     */
+    void writeTo(ByteBuffer buffer) {
+        buffer.putInt(slots).putInt(size).putInt(alive.length).put((byte) (weighted ? 1 : 0));
+        buffer.asLongBuffer().put(alive);
+        buffer.position(buffer.position() + 8 * alive.length);
+        for (long[] column : columns){
+            buffer.asLongBuffer().put(column, 0, alive.length);
+            buffer.position(buffer.position() + 8 * alive.length);
+        }
+        if (weighted){
+            buffer.asDoubleBuffer().put(logWeights, 0, slots);
+            buffer.position(buffer.position() + 8 * slots);
+        }
+    }
+
+    static SamplePool readFrom(Minesweeper minesweeper, ByteBuffer buffer) {
+        int slots = buffer.getInt();
+        int size = buffer.getInt();
+        int words = buffer.getInt();
+        boolean weighted = buffer.get() != 0;
+        SamplePool ret = new SamplePool(minesweeper, words << 6);
+        buffer.asLongBuffer().get(ret.alive);
+        buffer.position(buffer.position() + 8 * words);
+        for (long[] column : ret.columns){
+            buffer.asLongBuffer().get(column);
+            buffer.position(buffer.position() + 8 * words);
+        }
+        if (weighted){
+            buffer.asDoubleBuffer().get(ret.logWeights, 0, slots);
+            buffer.position(buffer.position() + 8 * slots);
+        }
+        ret.weighted = weighted;
+        ret.slots = slots;
+        ret.size = size;
+        return ret;
+    }
+
+    /**
+     * @return the number of samples in the pool
+     */
+    public int size() {
+        return size;
+    }
+
+    int capacity() {
+        return alive.length << 6;
+    }
+
+    public void add(long[] plan) {
+        add(plan, 0);
+    }
+
+    /**
+     * @param logWeight log of the importance weight of the plan
+     */
+    public void add(long[] plan, double logWeight) {
+        checkNotFrozen();
+        if (slots == capacity()){
+            if (size <= slots / 2){
+                compact();
+            }else{
+                grow(alive.length * 2);
+            }
+        }
+        int w = slots >>> 6;
+        long bit = 1L << slots;
+        for (int i = 0; i < plan.length; i++){
+            long word = plan[i];
+            while (word != 0){
+                int pos = (i << 6) + Long.numberOfTrailingZeros(word);
+                columns[pos][w] |= bit;
+                word &= word - 1;
+            }
+        }
+        alive[w] |= bit;
+        logWeights[slots] = logWeight;
+        weighted |= logWeight != 0;
+        slots++;
+        size++;
+    }
+
+    public void addAll(Collection<long[]> plans) {
+        plans.forEach(this::add);
+    }
+
+    /**
+     * @param logWeights of each plan
+     */
+    public void addAll(List<long[]> plans, List<Double> logWeights) {
+        for (int i = 0; i < plans.size(); i++){
+            add(plans.get(i), logWeights.get(i));
+        }
+    }
+
+    private void grow(int words) {
+        for (int pos = 0; pos < columns.length; pos++){
+            columns[pos] = Arrays.copyOf(columns[pos], words);
+        }
+        alive = Arrays.copyOf(alive, words);
+        logWeights = Arrays.copyOf(logWeights, words << 6);
+    }
+
+    /**
+     * Moves the alive samples to the front, freeing the slots of the removed ones. The columns and
+     * weights are rewritten into new arrays, as snapshots may share the current ones
+     */
+    void compact() {
+        checkNotFrozen();
+        int[] moveTo = new int[slots];
+        int target = 0;
+        for (int i = 0; i < slots; i++){
+            moveTo[i] = (alive[i >>> 6] & (1L << i)) != 0 ? target++ : -1;
+        }
+        for (int pos = 0; pos < columns.length; pos++){
+            long[] column = columns[pos];
+            long[] compacted = new long[column.length];
+            for (int i = 0; i < slots; i++){
+                if (moveTo[i] >= 0 && (column[i >>> 6] & (1L << i)) != 0){
+                    compacted[moveTo[i] >>> 6] |= 1L << moveTo[i];
+                }
+            }
+            columns[pos] = compacted;
+        }
+        double[] compactedWeights = new double[logWeights.length];
+        for (int i = 0; i < slots; i++){
+            if (moveTo[i] >= 0){
+                compactedWeights[moveTo[i]] = logWeights[i];
+            }
+        }
+        logWeights = compactedWeights;
+        Arrays.fill(alive, 0);
+        for (int i = 0; i < target; i++){
+            alive[i >>> 6] |= 1L << i;
+        }
+        slots = target;
+        size = target;
+    }
+
+    /**
+     * @return in how many samples pos contains a mine
+     */
+    public long count(int pos) {
+        long[] column = columns[pos];
+        long cnt = 0;
+        for (int w = 0; w < alive.length; w++){
+            cnt += Long.bitCount(column[w] & alive[w]);
+        }
+        return cnt;
+    }
+
+    /**
+     * @return for each position, the (weighted) fraction of the samples that contain a mine there,
+     * all 0 when the pool is empty
+     */
+    public double[] marginals() {
+        double[] ret = new double[columns.length];
+        if (size == 0){
+            return ret;
+        }
+        if (!weighted){
+            for (int pos = 0; pos < ret.length; pos++){
+                ret[pos] = (double) count(pos) / size;
+            }
+            return ret;
+        }
+        double[] weights = weights();
+        double total = Arrays.stream(weights).sum();
+        for (int pos = 0; pos < ret.length; pos++){
+            long[] column = columns[pos];
+            double sum = 0;
+            for (int w = 0; w < alive.length; w++){
+                long bits = column[w] & alive[w];
+                while (bits != 0){
+                    sum += weights[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                    bits &= bits - 1;
+                }
+            }
+            ret[pos] = sum / total;
+        }
+        return ret;
+    }
+
+    /**
+     * @return the weight of each slot relative to the largest, 0 for removed samples
+     */
+    private double[] weights() {
+        double[] ret = new double[slots];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < slots; i++){
+            if ((alive[i >>> 6] & (1L << i)) != 0){
+                max = Math.max(max, logWeights[i]);
+            }
+        }
+        for (int i = 0; i < slots; i++){
+            if ((alive[i >>> 6] & (1L << i)) != 0){
+                ret[i] = weighted ? Math.exp(logWeights[i] - max) : 1;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return (sum w)^2 / sum w^2, the number of samples when they are not weighted
+     */
+    public double effectiveSampleSize() {
+        if (!weighted){
+            return size;
+        }
+        double sum = 0, sumSq = 0;
+        for (double w : weights()){
+            sum += w;
+            sumSq += w * w;
+        }
+        return MineCounts.effectiveSampleSize(sum, sumSq);
+    }
+
+    /**
+     * Removes the samples that do not match the revealed boxes
+     * @return true if any sample was removed
+     */
+    public boolean retain(Map<Integer, Integer> revealed) {
+        int n = revealed.size();
+        int[] positions = new int[n];
+        int[] values = new int[n];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> e : revealed.entrySet()){
+            positions[i] = e.getKey();
+            values[i++] = e.getValue();
+        }
+        return retain(positions, values);
+    }
+
+    /**
+     * Removes the samples that do not match the revealed boxes
+     * @return true if any sample was removed
+     */
+    public boolean retain(RevealedState revealed) {
+        int[] positions = revealed.positions();
+        int[] values = new int[positions.length];
+        for (int i = 0; i < positions.length; i++){
+            values[i] = revealed.get(positions[i]);
+        }
+        return retain(positions, values);
+    }
+
+    /**
+     * Removes the samples that do not show values[i] at positions[i]. The samples are checked a
+     * block at a time, against one revealed box after the other until none of the block is left
+     * @return true if any sample was removed
+     */
+    public boolean retain(int[] positions, int[] values) {
+        checkNotFrozen();
+        int words = (slots + 63) >>> 6;
+        BitSlicedCounter counter = new BitSlicedCounter(BLOCK_WORDS);
+        long[] mask = new long[BLOCK_WORDS];
+        int removed = 0;
+        for (int offset = 0; offset < words; offset += BLOCK_WORDS){
+            int n = Math.min(BLOCK_WORDS, words - offset);
+            for (int i = 0; i < positions.length && any(alive, offset, n); i++){
+                matching(positions[i], values[i], offset, n, counter, mask);
+                for (int w = 0; w < n; w++){
+                    long before = alive[offset + w];
+                    long after = before & mask[w];
+                    alive[offset + w] = after;
+                    removed += Long.bitCount(before ^ after);
+                }
+            }
+        }
+        size -= removed;
+        return removed > 0;
+    }
+
+    /**
+     * Removes the samples that do not show value at pos
+     */
+    public void retain(int pos, int value) {
+        retain(new int[]{pos}, new int[]{value});
+    }
+
+    private static boolean any(long[] words, int offset, int n) {
+        long or = 0;
+        for (int w = offset; w < offset + n; w++){
+            or |= words[w];
+        }
+        return or != 0;
+    }
+
+    /**
+     * @return numbers[v]: the (weighted) number of samples in which pos holds no mine and shows v
+     */
+    public double[] numbers(int pos) {
+        int from = minesweeper.neighborOffsets[pos];
+        int to = minesweeper.neighborOffsets[pos + 1];
+        int words = (slots + 63) >>> 6;
+        BitSlicedCounter counter = new BitSlicedCounter(words);
+        for (int i = from; i < to; i++){
+            counter.add(columns[minesweeper.neighbors[i]], 0, words);
+        }
+        double[] weights = weighted ? weights() : null;
+        long[] mines = columns[pos];
+        long[] mask = new long[words];
+        double[] ret = new double[to - from + 1];
+        for (int v = 0; v < ret.length; v++){
+            counter.equal(v, mask, words);
+            for (int w = 0; w < words; w++){
+                long bits = mask[w] & ~mines[w] & alive[w];
+                if (weights == null){
+                    ret[v] += Long.bitCount(bits);
+                    continue;
+                }
+                while (bits != 0){
+                    ret[v] += weights[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Sets out[0..n) to the masks of the samples in words [offset, offset + n) that show value at pos
+     */
+    private void matching(int pos, int value, int offset, int n, BitSlicedCounter counter, long[] out) {
+        long[] mines = columns[pos];
+        if (value == -1){
+            System.arraycopy(mines, offset, out, 0, n);
+            return;
+        }
+        if (value == Deducer.SAFE){
+            for (int w = 0; w < n; w++){
+                out[w] = ~mines[offset + w];
+            }
+            return;
+        }
+        counter.clear(n);
+        for (int i = minesweeper.neighborOffsets[pos]; i < minesweeper.neighborOffsets[pos + 1]; i++){
+            counter.add(columns[minesweeper.neighbors[i]], offset, n);
+        }
+        counter.equal(value, out, n);
+        for (int w = 0; w < n; w++){
+            out[w] &= ~mines[offset + w];
+        }
+    }
+
+    /**
+     * Counts per sample, up to 15, over a run of words of samples. The counts are kept as 4 bit
+     * planes: bit b of s0[w] is the lowest bit of the count of sample b of word w, and so on. Adding
+     * a bitset ripples the carries through the planes, so 64 samples are counted with a handful of
+     * logical operations, in plain loops over arrays that the JIT can vectorize
+     */
+    static final class BitSlicedCounter {
+        final long[] s0, s1, s2, s3;
+
+        BitSlicedCounter(int words) {
+            s0 = new long[words];
+            s1 = new long[words];
+            s2 = new long[words];
+            s3 = new long[words];
+        }
+
+        void clear(int n) {
+            Arrays.fill(s0, 0, n, 0);
+            Arrays.fill(s1, 0, n, 0);
+            Arrays.fill(s2, 0, n, 0);
+            Arrays.fill(s3, 0, n, 0);
+        }
+
+        /**
+         * Adds 1 to the count of the samples set in x[offset..offset + n)
+         */
+        void add(long[] x, int offset, int n) {
+            for (int w = 0; w < n; w++){
+                long carry = x[offset + w];
+                long c0 = s0[w] & carry;
+                s0[w] ^= carry;
+                long c1 = s1[w] & c0;
+                s1[w] ^= c0;
+                long c2 = s2[w] & c1;
+                s2[w] ^= c1;
+                s3[w] ^= c2;
+            }
+        }
+
+        /**
+         * Sets out[0..n) to the masks of the samples whose count is value
+         */
+        void equal(int value, long[] out, int n) {
+            if (value < 0 || value > 15){
+                Arrays.fill(out, 0, n, 0);
+                return;
+            }
+            long m0 = -(value & 1), m1 = -((value >> 1) & 1), m2 = -((value >> 2) & 1), m3 = -((value >> 3) & 1);
+            for (int w = 0; w < n; w++){
+                out[w] = ~((s0[w] ^ m0) | (s1[w] ^ m1) | (s2[w] ^ m2) | (s3[w] ^ m3));
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.igor.minesweeper;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Handle to the probabilities being computed for one move.
+ *
+ * Intermediate estimates are published as snapshots while the job runs, and the final one
+ * completes {@link #result()}. Each job has its own cancellation token, so that a new move
+ * only stops the work that it made stale.
+ */
+public class SolverJob {
+    private final CompletableFuture<double[]> result = new CompletableFuture<>();
+    private final List<Consumer<double[]>> listeners = new CopyOnWriteArrayList<>();
+    private volatile double[] latest;
+    private volatile boolean cancelled;
+
+    /**
+     * @return the final probabilities. Completes exceptionally with a CancellationException if a
+     * newer move replaced this one
+     */
+    public CompletableFuture<double[]> result() {
+        return result;
+    }
+
+    /**
+     * @return the last snapshot published, null if none was published yet
+     */
+    public double[] latest() {
+        return latest;
+    }
+
+    /**
+     * Registers a listener for the snapshots. If one was already published, the listener is
+     * called with it right away
+     * @return this
+     */
+    public SolverJob onSnapshot(Consumer<double[]> listener) {
+        listeners.add(listener);
+        double[] probs = latest;
+        if (probs != null){
+            listener.accept(probs);
+        }
+        return this;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        result.cancel(false);
+    }
+
+    void publish(double[] probs) {
+        if (cancelled){
+            return;
+        }
+        latest = probs;
+        listeners.forEach(listener -> listener.accept(probs));
+    }
+
+    void complete(double[] probs) {
+        publish(probs);
+        result.complete(probs);
+    }
+
+    void fail(Throwable t) {
+        result.completeExceptionally(t);
+    }
+}
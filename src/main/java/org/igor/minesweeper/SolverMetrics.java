@@ -0,0 +1,162 @@
+package org.igor.minesweeper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Counters, histograms and gauges of the solver, by name. Safe to update from several threads and
+ * to read while being updated.
+ *
+ * Histograms keep power of two buckets, so percentiles are accurate to a factor of 2, which is
+ * enough to tell a 1ms move from a 100ms one.
+ */
+public class SolverMetrics {
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+    public static class Histogram {
+        private final long[] buckets = new long[64];
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        /**
+         * @param value not negative
+         */
+        public synchronized void record(long value) {
+            buckets[64 - Long.numberOfLeadingZeros(value) - (value == 0 ? 0 : 1)]++;
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getSum() {
+            return sum;
+        }
+
+        public synchronized long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        public synchronized long getMax() {
+            return count == 0 ? 0 : max;
+        }
+
+        public synchronized double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param p in [0, 1]
+         * @return an upper bound of the p-th quantile, within a factor of 2
+         */
+        public synchronized long percentile(double p) {
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int b = 0; b < buckets.length; b++){
+                seen += buckets[b];
+                if (seen >= rank && seen > 0){
+                    return Math.min(max, b == 63 ? Long.MAX_VALUE : (1L << (b + 1)) - 1);
+                }
+            }
+            return 0;
+        }
+    }
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, n -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * @return the value of the counter, 0 if it was never updated
+     */
+    public long counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public void record(String name, long value) {
+        histogram(name).record(value);
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Registers a value read on demand, replacing any gauge of the same name
+     */
+    public void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * @return the current value of the gauge, NaN if there is none
+     */
+    public double gauge(String name) {
+        DoubleSupplier gauge = gauges.get(name);
+        return gauge == null ? Double.NaN : gauge.getAsDouble();
+    }
+
+    /**
+     * @return {"counters": {...}, "histograms": {name: {count, sum, min, max, mean, p50, p90, p99}}, "gauges": {...}}
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"counters\":{");
+        String sep = "";
+        for (Map.Entry<String, LongAdder> e : counters.entrySet()){
+            sb.append(sep).append(quote(e.getKey())).append(':').append(e.getValue().sum());
+            sep = ",";
+        }
+        sb.append("},\"histograms\":{");
+        sep = "";
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()){
+            Histogram h = e.getValue();
+            synchronized (h){
+                sb.append(sep).append(quote(e.getKey()))
+                        .append(":{\"count\":").append(h.getCount())
+                        .append(",\"sum\":").append(h.getSum())
+                        .append(",\"min\":").append(h.getMin())
+                        .append(",\"max\":").append(h.getMax())
+                        .append(",\"mean\":").append(number(h.getMean()))
+                        .append(",\"p50\":").append(h.percentile(0.5))
+                        .append(",\"p90\":").append(h.percentile(0.9))
+                        .append(",\"p99\":").append(h.percentile(0.99))
+                        .append('}');
+            }
+            sep = ",";
+        }
+        sb.append("},\"gauges\":{");
+        sep = "";
+        for (Map.Entry<String, DoubleSupplier> e : new ConcurrentSkipListMap<>(gauges).entrySet()){
+            sb.append(sep).append(quote(e.getKey())).append(':').append(number(e.getValue().getAsDouble()));
+            sep = ",";
+        }
+        return sb.append("}}").toString();
+    }
+
+    private static String quote(String s) {
+        return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * JSON has no NaN or infinities
+     */
+    private static String number(double d) {
+        return Double.isNaN(d) || Double.isInfinite(d) ? "null" : Double.toString(d);
+    }
+}
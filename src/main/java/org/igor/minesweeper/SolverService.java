@@ -0,0 +1,238 @@
+package org.igor.minesweeper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many games in one JVM, with their regeneration sharing a fixed number of threads. The work
+ * the solvers split, to enumerate or to evaluate moves, runs on a fork/join pool of as many threads.
+ *
+ * Queued regenerations run by session priority, highest first, and in the order they were
+ * submitted among sessions of the same priority. Waiting ages a regeneration: each level of
+ * priority is worth {@link #AGING} submissions, so a low priority session is not starved by a
+ * steady stream of moves from higher ones. At most maxPending regenerations can be queued or
+ * running: past that a move is rejected, its job failing with a RejectedExecutionException, instead
+ * of piling up work. Each session has its own sampler, so a move only cancels the previous move of
+ * its own session.
+ */
+public class SolverService implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SolverService.class);
+
+    /** how many earlier submissions a regeneration can overtake per level of priority it is above them */
+    static final long AGING = 64;
+
+    private final ThreadPoolExecutor executor;
+    private final ForkJoinPool forkJoinPool;
+    private final Semaphore pending;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final SolverMetrics metrics = new SolverMetrics();
+    private final ComponentCache cache = new ComponentCache(MineSweeperSampler.CACHE_BYTES);
+
+    /**
+     * @param threads    the number of regenerations running at the same time
+     * @param maxPending the number of regenerations that can be queued or running
+     */
+    public SolverService(int threads, int maxPending) {
+        this.pending = new Semaphore(maxPending);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "solver-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.forkJoinPool = new ForkJoinPool(threads);
+        registerGauges();
+        metrics.gauge("service.sessions", sessions::size);
+        metrics.gauge("service.queued", () -> executor.getQueue().size());
+    }
+
+    /**
+     * A queued regeneration, ordered by submission moved ahead by {@link #AGING} per level of
+     * priority
+     */
+    private static class Task implements Runnable, Comparable<Task> {
+        final int priority;
+        final long sequence;
+        final Runnable runnable;
+
+        Task(int priority, long sequence, Runnable runnable) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            return Long.compare(sequence - priority * AGING, o.sequence - o.priority * AGING);
+        }
+    }
+
+    /**
+     * One game, with its own sampler
+     */
+    public class Session implements AutoCloseable {
+        private final long id;
+        private final MineSweeperSampler sampler;
+        private volatile int priority;
+        private volatile SolverJob job;
+
+        Session(long id, Minesweeper minesweeper, int numOfSamples, SplittableRandom random, int priority) {
+            this.id = id;
+            this.priority = priority;
+            this.sampler = new MineSweeperSampler(numOfSamples, minesweeper, false, random, metrics, cache, this::schedule,
+                    forkJoinPool, false);
+        }
+
+        void schedule(Runnable runnable) {
+            if (executor.isShutdown() || !pending.tryAcquire()){
+                metrics.increment("service.rejected");
+                throw new RejectedExecutionException("Too many pending regenerations");
+            }
+            try {
+                executor.execute(new Task(priority, sequence.incrementAndGet(), () -> {
+                    try {
+                        runnable.run();
+                    } finally {
+                        pending.release();
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                //shut down since the check above
+                pending.release();
+                metrics.increment("service.rejected");
+                throw e;
+            }
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public Minesweeper getMinesweeper() {
+            return sampler.getMinesweeper();
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * Applies to the moves made from now on
+         */
+        public void setPriority(int priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * @see MineSweeperSampler#open(Map)
+         */
+        public SolverJob open(Map<Integer, Integer> moves) {
+            SolverJob ret = sampler.open(moves);
+            job = ret;
+            return ret;
+        }
+
+        public double[] test() {
+            return sampler.test();
+        }
+
+        /**
+         * @see MineSweeperSampler#recommend(long)
+         */
+        public List<MoveRecommender.Move> recommend(long budgetNanos) {
+            return sampler.recommend(budgetNanos);
+        }
+
+        /**
+         * Cancels the running move, if any, and removes the session from the service
+         */
+        @Override
+        public void close() {
+            SolverJob current = job;
+            if (current != null){
+                current.cancel();
+            }
+            sessions.remove(id);
+        }
+    }
+
+    /**
+     * Starts a game on a new board
+     * @param priority higher first
+     */
+    public Session newSession(int dimX, int dimY, int numOfMines, int numOfSamples, SplittableRandom random, int priority) {
+        return newSession(new Minesweeper(dimX, dimY, numOfMines, random.split()), numOfSamples, random, priority);
+    }
+
+    public Session newSession(Minesweeper minesweeper, int numOfSamples, SplittableRandom random, int priority) {
+        long id = ids.incrementAndGet();
+        Session session = new Session(id, minesweeper, numOfSamples, random, priority);
+        sessions.put(id, session);
+        LOG.debug("Session {} started on {}x{}", id, minesweeper.getDimX(), minesweeper.getDimY());
+        return session;
+    }
+
+    /**
+     * The samplers share the metrics of the service without registering gauges: these are over
+     * all the sessions
+     */
+    private void registerGauges() {
+        metrics.gauge("cache.size", cache::size);
+        metrics.gauge("cache.bytes", cache::getBytes);
+        metrics.gauge("cache.hits", cache::getHits);
+        metrics.gauge("cache.misses", cache::getMisses);
+        metrics.gauge("retain.acceptanceRate", () -> (double) metrics.counter("retain.kept") / metrics.counter("retain.checked"));
+        metrics.gauge("pool.size", () -> sessions.values().stream().mapToInt(s -> s.sampler.getPoolSize()).sum());
+        metrics.gauge("sampling.effectiveSampleSize", () -> sessions.values().stream()
+                .mapToDouble(s -> s.sampler.getEffectiveSampleSize()).filter(ess -> !Double.isNaN(ess)).sum());
+        for (StrategyPlanner.Engine engine : StrategyPlanner.Engine.values()){
+            metrics.gauge("planner." + engine.name().toLowerCase() + ".nanosPerUnit", () -> sessions.values().stream()
+                    .mapToDouble(s -> s.sampler.getPlanner().getNanosPerUnit(engine)).average().orElse(Double.NaN));
+        }
+    }
+
+    /**
+     * @return the session, null if there is none with this id
+     */
+    public Session session(long id) {
+        return sessions.get(id);
+    }
+
+    public Map<Long, Session> sessions() {
+        return Collections.unmodifiableMap(sessions);
+    }
+
+    /**
+     * @return the metrics of all the sessions. The pool sizes and effective sample sizes are summed
+     * over the open sessions, and the planner costs are their average
+     */
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Closes every session and stops the threads
+     */
+    @Override
+    public void close() {
+        sessions.values().forEach(Session::close);
+        executor.shutdownNow();
+        forkJoinPool.shutdownNow();
+    }
+}
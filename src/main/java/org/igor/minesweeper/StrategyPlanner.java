@@ -0,0 +1,135 @@
+package org.igor.minesweeper;
+
+import org.apache.commons.math3.util.CombinatoricsUtils;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Picks the engine that computes the probabilities of a move.
+ *
+ * The work of each engine is estimated from the revealed boxes, in its own unit: nodes of the
+ * backtracking tree of the frontier components for {@link Engine#FRONTIER}, combinations of the
+ * remaining mines over the unopened boxes for {@link Engine#EXHAUSTIVE}, and box assignments for
+ * {@link Engine#SAMPLING}. The time per unit is measured on the moves made so far. The cheapest
+ * exact engine is picked if it fits the latency budget, sampling otherwise.
+ */
+public class StrategyPlanner {
+    public enum Engine {
+        FRONTIER, EXHAUSTIVE, SAMPLING
+    }
+
+    /** components larger than this could overflow the solution counts of FrontierSolver */
+    static final int MAX_COMPONENT = 62;
+    static final int DIVES = 16;
+    /** weight of the latest measurement in the time per unit */
+    static final double ALPHA = 0.2;
+
+    /**
+     * The engine picked for a move, along with the estimates it was picked on
+     */
+    public static class Plan {
+        public final Engine engine;
+        /** in each engine's unit, infinite when the engine can not be used */
+        public final Map<Engine, Double> units;
+        public final Map<Engine, Double> estimatedNanos;
+
+        Plan(Engine engine, Map<Engine, Double> units, Map<Engine, Double> estimatedNanos) {
+            this.engine = engine;
+            this.units = units;
+            this.estimatedNanos = estimatedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return engine + " " + estimatedNanos;
+        }
+    }
+
+    private final Minesweeper minesweeper;
+    private final ComponentCache cache;
+    private final long latencyBudgetNanos;
+    private final Map<Engine, Double> nanosPerUnit = new EnumMap<>(Engine.class);
+
+    /**
+     * @param latencyBudgetNanos how long an exact engine may take before sampling is preferred
+     */
+    public StrategyPlanner(Minesweeper minesweeper, long latencyBudgetNanos) {
+        this(minesweeper, null, latencyBudgetNanos);
+    }
+
+    /**
+     * @param cache the components found in it cost nothing to the frontier solver
+     */
+    public StrategyPlanner(Minesweeper minesweeper, ComponentCache cache, long latencyBudgetNanos) {
+        this.minesweeper = minesweeper;
+        this.cache = cache;
+        this.latencyBudgetNanos = latencyBudgetNanos;
+        // Starting points, from the benchmarks on a laptop
+        nanosPerUnit.put(Engine.FRONTIER, 20.0);
+        nanosPerUnit.put(Engine.EXHAUSTIVE, 5.0);
+        nanosPerUnit.put(Engine.SAMPLING, 1000.0);
+    }
+
+    /**
+     * @param revealed the boxes opened so far, -1 for a (known) mine
+     * @param draws    the number of plans sampling would draw
+     */
+    public Plan plan(Map<Integer, Integer> revealed, int draws, SplittableRandom random) {
+        return plan(RevealedState.of(minesweeper.getDimTotal(), revealed), draws, random);
+    }
+
+    /**
+     * @param revealed the boxes opened so far, -1 for a (known) mine
+     * @param draws    the number of plans sampling would draw
+     */
+    public Plan plan(RevealedState revealed, int draws, SplittableRandom random) {
+        List<FrontierSolver.Component> components = new FrontierSolver(minesweeper).components(revealed);
+        double frontierNodes = 0;
+        int frontierSize = 0;
+        for (FrontierSolver.Component component : components){
+            frontierSize += component.positions.length;
+            if (component.positions.length > MAX_COMPONENT){
+                frontierNodes = Double.POSITIVE_INFINITY;
+            }else if (cache == null || !cache.contains(component, minesweeper.getDimY())){
+                frontierNodes += FrontierSolver.estimateNodes(component, DIVES, random);
+            }
+        }
+        double combinations = CombinatoricsUtils.binomialCoefficientDouble(
+                revealed.getAvailable(), minesweeper.getNumOfMines() - revealed.getMinesFound());
+
+        Map<Engine, Double> units = new EnumMap<>(Engine.class);
+        units.put(Engine.FRONTIER, frontierNodes);
+        units.put(Engine.EXHAUSTIVE, combinations);
+        units.put(Engine.SAMPLING, (double) draws * Math.max(1, frontierSize));
+
+        Map<Engine, Double> estimatedNanos = new EnumMap<>(Engine.class);
+        Engine best = Engine.SAMPLING;
+        synchronized (this){
+            units.forEach((engine, u) -> estimatedNanos.put(engine, u * nanosPerUnit.get(engine)));
+        }
+        for (Engine engine : new Engine[]{Engine.FRONTIER, Engine.EXHAUSTIVE}){
+            double nanos = estimatedNanos.get(engine);
+            if (nanos <= latencyBudgetNanos && (best == Engine.SAMPLING || nanos < estimatedNanos.get(best))){
+                best = engine;
+            }
+        }
+        return new Plan(best, units, estimatedNanos);
+    }
+
+    /**
+     * Updates the time per unit of the engine with a finished run
+     */
+    public synchronized void record(Engine engine, double units, long nanos) {
+        if (units <= 0 || Double.isInfinite(units)){
+            return;
+        }
+        nanosPerUnit.put(engine, (1 - ALPHA) * nanosPerUnit.get(engine) + ALPHA * nanos / units);
+    }
+
+    public synchronized double getNanosPerUnit(Engine engine) {
+        return nanosPerUnit.get(engine);
+    }
+}
@@ -0,0 +1,140 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComponentCacheTest {
+
+    /**
+     * A 1 at (x, y) seeing the boxes (x, y + 1) and (x + 1, y + 1), next to a 2 at (x + 1, y) seeing
+     * those and (x + 2, y + 1): on a 10x10 board, laid out along y
+     */
+    private FrontierSolver.Component component(int x, int y) {
+        int dimY = 10;
+        FrontierSolver.Component component = new FrontierSolver.Component(
+                new int[]{x * dimY + y + 1, (x + 1) * dimY + y + 1, (x + 2) * dimY + y + 1});
+        component.constraints.add(new FrontierSolver.Constraint(new int[]{0, 1}, 1));
+        component.constraints.add(new FrontierSolver.Constraint(new int[]{0, 1, 2}, 2));
+        return component;
+    }
+
+    /**
+     * The same pattern turned by 90 degrees and mirrored: laid out along x, boxes in reverse order
+     */
+    private FrontierSolver.Component turned(int x, int y) {
+        int dimY = 10;
+        FrontierSolver.Component component = new FrontierSolver.Component(
+                new int[]{(x + 1) * dimY + y, (x + 1) * dimY + y + 1, (x + 1) * dimY + y + 2});
+        component.constraints.add(new FrontierSolver.Constraint(new int[]{2, 1}, 1));
+        component.constraints.add(new FrontierSolver.Constraint(new int[]{0, 1, 2}, 2));
+        return component;
+    }
+
+    @Test
+    void testKeyIgnoresTranslationAndSymmetry() {
+        int[] order = new int[3];
+        ComponentCache.Key key = ComponentCache.key(component(0, 0), 10, order);
+        assertEquals(key, ComponentCache.key(component(5, 3), 10, order));
+        assertEquals(key, ComponentCache.key(turned(2, 4), 10, order));
+        FrontierSolver.Component other = component(0, 0);
+        other.constraints.set(0, new FrontierSolver.Constraint(new int[]{0, 2}, 1));
+        assertNotEquals(key, ComponentCache.key(other, 10, order));
+    }
+
+    @Test
+    void testHitMatchesEnumeration() {
+        ComponentCache cache = new ComponentCache(1 << 20);
+        cache.enumerate(component(0, 0), 10);
+        assertEquals(1, cache.getMisses());
+
+        FrontierSolver.Component cached = turned(2, 4);
+        cache.enumerate(cached, 10);
+        assertEquals(1, cache.getHits());
+        FrontierSolver.Component expected = turned(2, 4);
+        FrontierSolver.enumerate(expected);
+        assertArrayEquals(expected.solutions, cached.solutions);
+        for (int k = 0; k < expected.solutions.length; k++) {
+            assertArrayEquals(expected.mineCounts[k], cached.mineCounts[k]);
+        }
+    }
+
+    /**
+     * A single box with a mine, seen by one number
+     */
+    private FrontierSolver.Component single(int pos) {
+        FrontierSolver.Component component = new FrontierSolver.Component(new int[]{pos});
+        component.constraints.add(new FrontierSolver.Constraint(new int[]{0}, 1));
+        return component;
+    }
+
+    /**
+     * A row of n boxes, with a number over each pair of neighbors
+     */
+    private FrontierSolver.Component row(int n) {
+        int[] positions = new int[n];
+        for (int i = 0; i < n; i++) {
+            positions[i] = i;
+        }
+        FrontierSolver.Component component = new FrontierSolver.Component(positions);
+        for (int i = 0; i + 1 < n; i++) {
+            component.constraints.add(new FrontierSolver.Constraint(new int[]{i, i + 1}, 1));
+        }
+        return component;
+    }
+
+    @Test
+    void testEviction() {
+        ComponentCache sizer = new ComponentCache(Long.MAX_VALUE);
+        sizer.enumerate(component(0, 0), 10);
+        ComponentCache cache = new ComponentCache(sizer.getBytes());
+        cache.enumerate(component(0, 0), 10);
+        cache.enumerate(single(0), 10);
+        assertEquals(1, cache.size());
+        assertFalse(cache.contains(component(0, 0), 10));
+        assertTrue(cache.getBytes() <= sizer.getBytes());
+    }
+
+    @Test
+    void testEvictionByBytes() {
+        ComponentCache sizer = new ComponentCache(Long.MAX_VALUE);
+        sizer.enumerate(row(20), 10);
+        long rowBytes = sizer.getBytes();
+        sizer.enumerate(single(0), 10);
+        long singleBytes = sizer.getBytes() - rowBytes;
+
+        // room for the row and a single box: the single box and the larger component(0, 0) both go
+        ComponentCache cache = new ComponentCache(rowBytes + singleBytes);
+        cache.enumerate(single(0), 10);
+        cache.enumerate(component(0, 0), 10);
+        assertEquals(2, cache.size());
+        cache.enumerate(row(20), 10);
+        assertEquals(1, cache.size());
+        assertEquals(rowBytes, cache.getBytes());
+        assertTrue(cache.contains(row(20), 10));
+    }
+
+    @Test
+    void testSaveLoad(@TempDir Path dir) throws Exception {
+        Minesweeper minesweeper = Fixtures.board();
+        ComponentCache cache = new ComponentCache(1 << 20);
+        FrontierSolver solver = new FrontierSolver(minesweeper, cache);
+        Map<Integer, Integer> revealed = Fixtures.reveal(minesweeper, 0, 12, 24);
+        double[] probs = solver.solve(revealed);
+        Path file = dir.resolve("components");
+        cache.save(file);
+
+        ComponentCache loaded = new ComponentCache(1 << 20);
+        loaded.load(file);
+        assertEquals(cache.size(), loaded.size());
+        List<FrontierSolver.Component> components = new FrontierSolver(minesweeper).components(revealed);
+        components.forEach(c -> assertTrue(loaded.contains(c, 5)));
+        assertArrayEquals(probs, new FrontierSolver(minesweeper, loaded).solve(revealed), 1e-12);
+        assertEquals(0, loaded.getMisses());
+    }
+}
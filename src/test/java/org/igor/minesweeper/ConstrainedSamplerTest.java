@@ -0,0 +1,69 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.igor.minesweeper.Fixtures.reveal;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstrainedSamplerTest {
+
+    private Minesweeper minesweeper = Fixtures.board();
+
+    @Test
+    void testEveryPlanMatches() {
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 5, 6, 11, 12, 17, 18, 24);
+        ConstrainedSampler sampler = new ConstrainedSampler(minesweeper, revealed, new SplittableRandom(42));
+        ConstrainedSampler.Batch batch = sampler.sample(1000, () -> false);
+        assertEquals(1000, batch.plans.size());
+        for (long[] plan : batch.plans) {
+            assertTrue(minesweeper.matches(revealed, plan));
+            assertEquals(5, Arrays.stream(plan).map(Long::bitCount).sum());
+        }
+        SamplePool pool = new SamplePool(minesweeper);
+        pool.addAll(batch.plans, batch.normalizedLogWeights());
+        assertTrue(pool.effectiveSampleSize() > 0 && pool.effectiveSampleSize() <= 1000);
+    }
+
+    @Test
+    void testWeightedMarginals() {
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 5, 6, 11, 12, 17, 18, 24);
+        ConstrainedSampler.Batch batch = new ConstrainedSampler(minesweeper, revealed, new SplittableRandom(42)).sample(20_000, () -> false);
+        SamplePool pool = new SamplePool(minesweeper);
+        pool.addAll(batch.plans, batch.normalizedLogWeights());
+        MineCounts counts = new MineCounts(minesweeper.getDimTotal());
+        for (int i = 0; i < batch.plans.size(); i++) {
+            counts.accept(batch.plans.get(i), batch.logWeights.get(i));
+        }
+        assertEquals(counts.effectiveSampleSize(), pool.effectiveSampleSize(), 1e-6);
+        assertArrayEquals(new FrontierSolver(minesweeper).solve(revealed), pool.marginals(), 0.03);
+    }
+
+    @Test
+    void testWeightedPoolMixesMoves() {
+        // plans drawn for an earlier move, filtered by the current one, along with plans drawn for it
+        Map<Integer, Integer> earlier = reveal(minesweeper, 0, 24);
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 5, 6, 11, 12, 17, 18, 24);
+        SplittableRandom random = new SplittableRandom(42);
+        SamplePool pool = new SamplePool(minesweeper);
+        ConstrainedSampler.Batch batch = new ConstrainedSampler(minesweeper, earlier, random).sample(20_000, () -> false);
+        pool.addAll(batch.plans, batch.normalizedLogWeights());
+        pool.retain(revealed);
+        batch = new ConstrainedSampler(minesweeper, revealed, random).sample(20_000, () -> false);
+        pool.addAll(batch.plans, batch.normalizedLogWeights());
+        assertTrue(pool.effectiveSampleSize() < pool.size());
+        assertArrayEquals(new FrontierSolver(minesweeper).solve(revealed), pool.marginals(), 0.03);
+    }
+
+    @Test
+    void testStreamedCounts() {
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 5, 6, 11, 12, 17, 18, 24);
+        MineCounts counts = new MineCounts(minesweeper.getDimTotal());
+        new ConstrainedSampler(minesweeper, revealed, new SplittableRandom(42)).sample(20_000, counts, () -> false);
+        assertEquals(20_000, counts.getPlans());
+        assertArrayEquals(new FrontierSolver(minesweeper).solve(revealed), counts.probabilities(), 0.03);
+    }
+}
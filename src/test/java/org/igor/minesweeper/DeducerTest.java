@@ -0,0 +1,47 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.igor.minesweeper.Fixtures.reveal;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeducerTest {
+
+    private Minesweeper minesweeper = Fixtures.board();
+    private Deducer deducer = new Deducer(minesweeper);
+
+    @Test
+    void testSinglePoint() {
+        // 0 shows 1 and only 1 is left unknown around it
+        Map<Integer, Integer> forced = deducer.deduce(reveal(minesweeper, 0, 5, 6));
+        assertEquals(-1, (int) forced.get(1));
+    }
+
+    @Test
+    void testSubset() {
+        // 0 sees {1, 6} with one mine, 5 sees {1, 6, 10, 11} with one mine: 10 and 11 are safe
+        Map<Integer, Integer> forced = deducer.deduce(reveal(minesweeper, 0, 5));
+        assertEquals(Deducer.SAFE, (int) forced.get(10));
+        assertEquals(Deducer.SAFE, (int) forced.get(11));
+    }
+
+    @Test
+    void testForcedBoxesAgreeWithTheExactSolution() {
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 5, 6, 11, 12, 17, 18, 24);
+        double[] exact = new FrontierSolver(minesweeper).solve(revealed);
+        Map<Integer, Integer> forced = deducer.deduce(revealed);
+        assertFalse(forced.isEmpty());
+        forced.forEach((pos, value) -> {
+            assertEquals(value == -1 ? 1 : 0, exact[pos], 1e-9);
+            assertEquals(value == -1, minesweeper.test(pos));
+        });
+    }
+
+    @Test
+    void testDifference() {
+        assertArrayEquals(new int[]{2, 5}, Deducer.difference(new int[]{1, 2, 4, 5}, new int[]{1, 4}));
+        assertNull(Deducer.difference(new int[]{1, 2, 4}, new int[]{1, 3}));
+    }
+}
@@ -0,0 +1,50 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.igor.minesweeper.Fixtures.reveal;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExhaustiveEnumeratorTest {
+
+    private Minesweeper minesweeper = Fixtures.board();
+
+    @Test
+    void testMatchesFrontierSolver() {
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 5, 6, 11, 12, 17, 18, 24);
+        revealed.put(1, -1);
+        assertArrayEquals(new FrontierSolver(minesweeper).solve(revealed), enumerate(minesweeper, revealed), 1e-9);
+    }
+
+    @Test
+    void testForkedMatchesFrontierSolver() {
+        Minesweeper minesweeper = new Minesweeper(6, 6, 6, new int[]{1, 8, 14, 21, 28, 34});
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 35);
+        assertTrue(new ExhaustiveEnumerator(minesweeper, revealed, () -> false).combinations() > ExhaustiveEnumerator.SEQUENTIAL_THRESHOLD);
+        assertArrayEquals(new FrontierSolver(minesweeper).solve(revealed), enumerate(minesweeper, revealed), 1e-9);
+    }
+
+    private double[] enumerate(Minesweeper minesweeper, Map<Integer, Integer> revealed) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            MineCounts counts = new ExhaustiveEnumerator(minesweeper, revealed, () -> false).enumerate(pool);
+            assertTrue(counts.getTotal() > 0);
+            return counts.probabilities();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testCancel() {
+        Minesweeper minesweeper = new Minesweeper(10, 10, 20, new SplittableRandom(10));
+        ExhaustiveEnumerator enumerator = new ExhaustiveEnumerator(minesweeper, new TreeMap<>(), () -> true);
+        assertThrows(CancellationException.class, () -> enumerator.enumerate(ForkJoinPool.commonPool()));
+    }
+}
@@ -0,0 +1,52 @@
+package org.igor.minesweeper;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * The board most tests play on, and what revealing its boxes shows
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return a 5x5 board with mines at 1, 7, 13, 19 and 20
+     */
+    static Minesweeper board() {
+        return new Minesweeper(5, 5, 5, new int[]{1, 7, 13, 19, 20});
+    }
+
+    /**
+     * @return a 3 x dimY board with a mine above or below each box of the middle row. Once the
+     * middle row is open, its frontier is too large to solve exactly and no box can be deduced
+     */
+    static Minesweeper strip(int dimY, SplittableRandom random) {
+        int[] mines = new int[dimY];
+        for (int y = 0; y < dimY; y++) {
+            mines[y] = (random.nextBoolean() ? 0 : 2) * dimY + y;
+        }
+        return new Minesweeper(3, dimY, dimY, mines);
+    }
+
+    /**
+     * @return the numbers of the middle row of a {@link #strip}
+     */
+    static Map<Integer, Integer> middleRow(Minesweeper strip) {
+        return reveal(strip, IntStream.range(strip.getDimY(), 2 * strip.getDimY()).toArray());
+    }
+
+    /**
+     * @return the number each of positions shows on minesweeper
+     */
+    static Map<Integer, Integer> reveal(Minesweeper minesweeper, int... positions) {
+        Map<Integer, Integer> revealed = new TreeMap<>();
+        for (int pos : positions) {
+            revealed.put(pos, minesweeper.getNumberOfAdjacentMines(pos));
+        }
+        return revealed;
+    }
+}
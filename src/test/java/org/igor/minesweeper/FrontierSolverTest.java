@@ -0,0 +1,90 @@
+package org.igor.minesweeper;
+
+import org.apache.commons.math3.util.CombinatoricsUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.igor.minesweeper.Fixtures.reveal;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrontierSolverTest {
+
+    private Minesweeper minesweeper = Fixtures.board();
+
+    private double[] bruteForce(Map<Integer, Integer> revealed) {
+        int minesFound = (int) revealed.values().stream().filter(v -> v == -1).count();
+        int[] available = new int[minesweeper.getDimTotal() - revealed.size()];
+        int cnt = 0;
+        for (int pos = 0; pos < minesweeper.getDimTotal(); pos++) {
+            if (!revealed.containsKey(pos)) {
+                available[cnt++] = pos;
+            }
+        }
+        double[] counts = new double[minesweeper.getDimTotal()];
+        long total = 0;
+        Iterator<int[]> iterator = CombinatoricsUtils.combinationsIterator(available.length, minesweeper.getNumOfMines() - minesFound);
+        while (iterator.hasNext()) {
+            long[] plan = Minesweeper.plan(minesweeper.getDimTotal(),
+                    revealed.entrySet().stream().filter(e -> e.getValue() == -1).mapToInt(Map.Entry::getKey).toArray());
+            Arrays.stream(iterator.next()).forEach(i -> plan[available[i] >>> 6] |= 1L << available[i]);
+            if (minesweeper.matches(revealed, plan)) {
+                total++;
+                for (int pos = 0; pos < counts.length; pos++) {
+                    if (Minesweeper.test(pos, plan)) {
+                        counts[pos]++;
+                    }
+                }
+            }
+        }
+        for (int pos = 0; pos < counts.length; pos++) {
+            counts[pos] /= total;
+        }
+        return counts;
+    }
+
+    @Test
+    void testNothingRevealed() {
+        double[] probs = new FrontierSolver(minesweeper).solve(Collections.emptyMap());
+        for (double p : probs) {
+            assertEquals(5.0 / 25, p, 1e-12);
+        }
+    }
+
+    @Test
+    void testMatchesBruteForce() {
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 5, 6, 11, 12, 17, 18, 24);
+        assertArrayEquals(bruteForce(revealed), new FrontierSolver(minesweeper).solve(revealed), 1e-9);
+
+        revealed.put(1, -1);
+        revealed.putAll(reveal(minesweeper, 2, 3, 8));
+        assertArrayEquals(bruteForce(revealed), new FrontierSolver(minesweeper).solve(revealed), 1e-9);
+    }
+
+    @Test
+    void testUniqueSolution() {
+        Minesweeper minesweeper = new Minesweeper(10, 10, 10, new int[]{7, 18, 35, 39, 44, 49, 54, 63, 81, 84});
+        Map<Integer, Integer> revealed = new TreeMap<>();
+        int[] unopened = {7, 8, 9, 17, 18, 19, 29, 35, 39, 44, 49, 54, 63, 64, 73, 74, 80, 81, 82, 83, 84, 90, 91, 92, 93, 94};
+        for (int pos = 0; pos < 100; pos++) {
+            if (Arrays.binarySearch(unopened, pos) < 0) {
+                revealed.put(pos, minesweeper.getNumberOfAdjacentMines(pos));
+            }
+        }
+        double[] probs = new FrontierSolver(minesweeper).solve(revealed);
+        for (int pos = 0; pos < 100; pos++) {
+            assertEquals(minesweeper.test(pos) ? 1 : 0, probs[pos], 1e-9);
+        }
+    }
+
+    @Test
+    void testLogBinomial() {
+        for (int n = 0; n < 500; n += 7) {
+            for (int k = 0; k <= n; k += 3) {
+                assertEquals(CombinatoricsUtils.binomialCoefficientLog(n, k), LogBinomial.log(n, k), 1e-9);
+            }
+        }
+        assertEquals(Double.NEGATIVE_INFINITY, LogBinomial.log(5, 6));
+        assertEquals(Double.NEGATIVE_INFINITY, LogBinomial.log(5, -1));
+    }
+}
@@ -0,0 +1,118 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.igor.minesweeper.Fixtures.reveal;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MineSweeperSamplerTest {
+
+    private Minesweeper minesweeper = Fixtures.board();
+
+    @Test
+    void testPriorBeforeFirstMove() {
+        MineSweeperSampler sampler = new MineSweeperSampler(100_000, minesweeper);
+        double[] probs = sampler.test();
+        assertEquals(25, probs.length);
+        for (double p : probs) {
+            assertEquals(0.2, p, 1e-12);
+        }
+        assertEquals(0, sampler.getMetrics().gauge("pool.size"));
+    }
+
+    @Test
+    void testOpen() throws Exception {
+        MineSweeperSampler sampler = new MineSweeperSampler(10_000, minesweeper);
+        // nothing can be deduced from these
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 12, 24);
+        assertTrue(new Deducer(minesweeper).deduce(revealed).isEmpty());
+        SolverJob job = sampler.open(revealed);
+        double[] probs = job.result().get(10, TimeUnit.SECONDS);
+        assertArrayEquals(new FrontierSolver(minesweeper).solve(revealed), probs, 1e-9);
+        assertSame(probs, job.latest());
+    }
+
+    @Test
+    void testDeducedBoxesShowFirst() throws Exception {
+        MineSweeperSampler sampler = new MineSweeperSampler(10_000, minesweeper);
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 5, 6, 11, 12, 17, 18, 24);
+        Map<Integer, Integer> forced = new Deducer(minesweeper).deduce(revealed);
+        assertTrue(forced.containsValue(Deducer.SAFE));
+        CompletableFuture<double[]> first = new CompletableFuture<>();
+        SolverJob job = sampler.open(revealed).onSnapshot(first::complete);
+        double[] probs = first.get(10, TimeUnit.SECONDS);
+        forced.forEach((pos, value) -> assertEquals(value == -1 ? 1 : 0, probs[pos]));
+
+        // the boxes left undecided are still solved, by the frontier solver only
+        double[] result = job.result().get(10, TimeUnit.SECONDS);
+        assertArrayEquals(new FrontierSolver(minesweeper).solve(revealed), result, 1e-9);
+        assertArrayEquals(result, sampler.test());
+        assertEquals(1, sampler.getMetrics().counter("regenerate.frontier"));
+        assertEquals(0, sampler.getMetrics().counter("regenerate.exhaustive"));
+        assertEquals(0, sampler.getMetrics().counter("regenerate.sampling"));
+    }
+
+    @Test
+    void testCountOnly() throws Exception {
+        Minesweeper strip = Fixtures.strip(70, new SplittableRandom(7));
+        Map<Integer, Integer> revealed = Fixtures.middleRow(strip);
+        assertTrue(new Deducer(strip).deduce(revealed).isEmpty());
+
+        MineSweeperSampler sampler = new MineSweeperSampler(10_000, strip, true, new SplittableRandom(1));
+        SolverJob job = sampler.open(revealed);
+        assertEstimate(strip, revealed, sampler.test());
+        double[] probs = job.result().get(10, TimeUnit.SECONDS);
+        assertEstimate(strip, revealed, probs);
+        assertArrayEquals(probs, sampler.test());
+        assertEquals(1, sampler.getMetrics().counter("regenerate.counts"));
+        assertEquals(0, sampler.getMetrics().gauge("pool.size"));
+    }
+
+    /**
+     * Checks that the opened boxes are safe and that the others hold the mines left
+     */
+    private void assertEstimate(Minesweeper minesweeper, Map<Integer, Integer> revealed, double[] probs) {
+        revealed.keySet().forEach(pos -> assertEquals(0, probs[pos]));
+        for (double p : probs) {
+            assertTrue(p >= 0 && p <= 1, "probability " + p);
+        }
+        assertEquals(minesweeper.getNumOfMines(), Arrays.stream(probs).sum(), 1e-6);
+    }
+
+    @Test
+    void testNextMoveCancelsPrevious() throws Exception {
+        MineSweeperSampler sampler = new MineSweeperSampler(10_000, minesweeper);
+        SolverJob first = sampler.open(reveal(minesweeper, 0));
+        SolverJob second = sampler.open(reveal(minesweeper, 12, 24));
+        assertTrue(first.isCancelled());
+
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 12, 24);
+        assertArrayEquals(new FrontierSolver(minesweeper).solve(revealed), second.result().get(10, TimeUnit.SECONDS), 1e-9);
+    }
+
+    @Test
+    void testSaveRestore(@TempDir Path dir) throws Exception {
+        MineSweeperSampler sampler = new MineSweeperSampler(10_000, minesweeper, false, new SplittableRandom(1));
+        sampler.open(reveal(minesweeper, 0, 12, 24)).result().get(10, TimeUnit.SECONDS);
+        Path file = dir.resolve("sampler");
+        sampler.save(file);
+
+        MineSweeperSampler restored = MineSweeperSampler.restore(file, new SplittableRandom(1));
+        assertArrayEquals(minesweeper.minePositions, restored.getMinesweeper().minePositions);
+        assertEquals(sampler.getOpenedSoFar(), restored.getOpenedSoFar());
+        assertArrayEquals(sampler.test(), restored.test());
+
+        Map<Integer, Integer> revealed = reveal(minesweeper, 0, 2, 12, 24);
+        assertTrue(new Deducer(minesweeper).deduce(revealed).isEmpty());
+        double[] probs = restored.open(reveal(minesweeper, 2)).result().get(10, TimeUnit.SECONDS);
+        assertArrayEquals(new FrontierSolver(minesweeper).solve(revealed), probs, 1e-9);
+    }
+}
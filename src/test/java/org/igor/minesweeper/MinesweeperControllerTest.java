@@ -0,0 +1,55 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinesweeperControllerTest {
+
+    @BeforeAll
+    static void headless() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @Test
+    void testFramesOnlyCarryChanges() {
+        MinesweeperController controller = new MinesweeperController(3, 3, 1);
+        double[] probs = new double[9];
+        Arrays.fill(probs, 0.125);
+        controller.publish(probs);
+        assertEquals(9, controller.pending().changed.cardinality());
+        assertEquals(0.125, controller.pending().avProbs[4], 1e-12);
+
+        // not painted yet: the changes add up
+        double[] next = probs.clone();
+        next[0] = 0.5;
+        controller.publish(next);
+        assertEquals(9, controller.pending().changed.cardinality());
+    }
+
+    @Test
+    void testNeighborsOfAChange() {
+        MinesweeperController controller = new MinesweeperController(3, 3, 1);
+        double[] probs = new double[9];
+        Arrays.fill(probs, 0.125);
+        controller.publish(probs);
+        controller.paintFrame();
+
+        double[] next = probs.clone();
+        next[0] = 0.5;
+        // a change of less than the display resolution
+        next[8] = 0.1251;
+        controller.publish(next);
+        BitSet expected = new BitSet();
+        // 0 itself, and the average around 1, 3 and 4
+        expected.set(0);
+        expected.set(1);
+        expected.set(3);
+        expected.set(4);
+        assertEquals(expected, controller.pending().changed);
+    }
+}
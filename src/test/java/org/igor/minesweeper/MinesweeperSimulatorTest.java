@@ -0,0 +1,27 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinesweeperSimulatorTest {
+
+    @Test
+    void testSafest() {
+        double[] probs = {0.5, 0.1, 0.0, 0.3};
+        assertEquals(2, MinesweeperSimulator.safest(probs, new long[1], new SplittableRandom(1)));
+        assertEquals(1, MinesweeperSimulator.safest(probs, Minesweeper.plan(4, 2), new SplittableRandom(1)));
+    }
+
+    @Test
+    void testRun() throws Exception {
+        List<MinesweeperSimulator.Result> results = new MinesweeperSimulator(5, 5, 3, 1000, new SplittableRandom(7)).run(10, 2);
+        assertEquals(10, results.size());
+        results.forEach(r -> assertTrue(r.getMoves() > 0));
+        String report = MinesweeperSimulator.report(results, 1_000_000_000L);
+        assertTrue(report.startsWith("games: 10"));
+    }
+}
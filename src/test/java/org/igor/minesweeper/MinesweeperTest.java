@@ -3,14 +3,16 @@ package org.igor.minesweeper;
 import com.google.common.collect.ImmutableMap;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.TreeMap;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class MinesweeperTest {
 
-    private byte[] testMinePlan = new byte[]{
+    private int[] testMinePlan = new int[]{
             4, 8,
             10 + 1, 10 + 7,
             20 + 3, 20 + 5,
@@ -27,8 +29,8 @@ class MinesweeperTest {
         int dimX = minesweeper.getDimX();
         int dimY = minesweeper.getDimY();
 
-        byte pos = minesweeper.getPos(5, 5);
-        byte[] adj = minesweeper.adjacent(pos);
+        int pos = minesweeper.getPos(5, 5);
+        int[] adj = minesweeper.adjacent(pos);
         assertEquals(8, adj.length);
 
         pos = minesweeper.getPos(0, 0);
@@ -47,7 +49,7 @@ class MinesweeperTest {
 
     @Test
     void testNumOfMines() {
-        byte pos = minesweeper.getPos(5, 5);
+        int pos = minesweeper.getPos(5, 5);
         int numOfMines = minesweeper.getNumberOfAdjacentMines(pos);
         assertEquals(0, numOfMines);
 
@@ -66,93 +68,179 @@ class MinesweeperTest {
 
     @Test
     public void testMatchOne() {
-        byte pos = minesweeper.getPos(4, 5);
-        assertTrue(minesweeper.matches(pos, 1, testMinePlan));
+        int pos = minesweeper.getPos(4, 5);
+        assertTrue(minesweeper.matches(pos, 1, minesweeper.minePositions));
 
         pos = minesweeper.getPos(1, 7);
-        assertFalse(minesweeper.matches(pos, 1, testMinePlan));
+        assertFalse(minesweeper.matches(pos, 1, minesweeper.minePositions));
     }
 
     @Test
     public void testRegenerateExhaustive() {
-        Map<Byte, Integer> soFar = new TreeMap<>();
-        soFar.put((byte) 0, 0);
-        soFar.put((byte) 1, 0);
-        soFar.put((byte) 2, 0);
-        soFar.put((byte) 3, 0);
-        soFar.put((byte) 4, 0);
-        soFar.put((byte) 5, 0);
-        soFar.put((byte) 6, 1);
-        soFar.put((byte) 10, 0);
-        soFar.put((byte) 11, 0);
-        soFar.put((byte) 12, 0);
-        soFar.put((byte) 13, 0);
-        soFar.put((byte) 14, 0);
-        soFar.put((byte) 15, 0);
-        soFar.put((byte) 16, 1);
-        soFar.put((byte) 20, 0);
-        soFar.put((byte) 21, 0);
-        soFar.put((byte) 22, 0);
-        soFar.put((byte) 23, 0);
-        soFar.put((byte) 24, 1);
-        soFar.put((byte) 25, 1);
-        soFar.put((byte) 26, 1);
-        soFar.put((byte) 27, 1);
-        soFar.put((byte) 28, 2);
-        soFar.put((byte) 30, 0);
-        soFar.put((byte) 31, 0);
-        soFar.put((byte) 32, 0);
-        soFar.put((byte) 33, 1);
-        soFar.put((byte) 34, 2);
-        soFar.put((byte) 36, 1);
-        soFar.put((byte) 37, 0);
-        soFar.put((byte) 38, 2);
-        soFar.put((byte) 40, 0);
-        soFar.put((byte) 41, 0);
-        soFar.put((byte) 42, 0);
-        soFar.put((byte) 43, 2);
-        soFar.put((byte) 45, 3);
-        soFar.put((byte) 46, 1);
-        soFar.put((byte) 47, 0);
-        soFar.put((byte) 48, 2);
-        soFar.put((byte) 50, 0);
-        soFar.put((byte) 51, 0);
-        soFar.put((byte) 52, 1);
-        soFar.put((byte) 53, 3);
-        soFar.put((byte) 55, 2);
-        soFar.put((byte) 56, 0);
-        soFar.put((byte) 57, 0);
-        soFar.put((byte) 58, 1);
-        soFar.put((byte) 59, 1);
-        soFar.put((byte) 60, 0);
-        soFar.put((byte) 61, 0);
-        soFar.put((byte) 62, 1);
-        soFar.put((byte) 65, 1);
-        soFar.put((byte) 66, 0);
-        soFar.put((byte) 67, 0);
-        soFar.put((byte) 68, 0);
-        soFar.put((byte) 69, 0);
-        soFar.put((byte) 70, 1);
-        soFar.put((byte) 71, 1);
-        soFar.put((byte) 72, 2);
-        soFar.put((byte) 75, 1);
-        soFar.put((byte) 76, 0);
-        soFar.put((byte) 77, 0);
-        soFar.put((byte) 78, 0);
-        soFar.put((byte) 79, 0);
-        soFar.put((byte) 85, 1);
-        soFar.put((byte) 86, 0);
-        soFar.put((byte) 87, 0);
-        soFar.put((byte) 88, 0);
-        soFar.put((byte) 89, 0);
-        soFar.put((byte) 95, 1);
-        soFar.put((byte) 96, 0);
-        soFar.put((byte) 97, 0);
-        soFar.put((byte) 98, 0);
-        soFar.put((byte) 99, 0);
-
-        byte[] plan = new byte[]{7, 8, 9, 17, 18, 19, 29, 35, 39, 44};
+        Map<Integer, Integer> soFar = new TreeMap<>();
+        soFar.put(0, 0);
+        soFar.put(1, 0);
+        soFar.put(2, 0);
+        soFar.put(3, 0);
+        soFar.put(4, 0);
+        soFar.put(5, 0);
+        soFar.put(6, 1);
+        soFar.put(10, 0);
+        soFar.put(11, 0);
+        soFar.put(12, 0);
+        soFar.put(13, 0);
+        soFar.put(14, 0);
+        soFar.put(15, 0);
+        soFar.put(16, 1);
+        soFar.put(20, 0);
+        soFar.put(21, 0);
+        soFar.put(22, 0);
+        soFar.put(23, 0);
+        soFar.put(24, 1);
+        soFar.put(25, 1);
+        soFar.put(26, 1);
+        soFar.put(27, 1);
+        soFar.put(28, 2);
+        soFar.put(30, 0);
+        soFar.put(31, 0);
+        soFar.put(32, 0);
+        soFar.put(33, 1);
+        soFar.put(34, 2);
+        soFar.put(36, 1);
+        soFar.put(37, 0);
+        soFar.put(38, 2);
+        soFar.put(40, 0);
+        soFar.put(41, 0);
+        soFar.put(42, 0);
+        soFar.put(43, 2);
+        soFar.put(45, 3);
+        soFar.put(46, 1);
+        soFar.put(47, 0);
+        soFar.put(48, 2);
+        soFar.put(50, 0);
+        soFar.put(51, 0);
+        soFar.put(52, 1);
+        soFar.put(53, 3);
+        soFar.put(55, 2);
+        soFar.put(56, 0);
+        soFar.put(57, 0);
+        soFar.put(58, 1);
+        soFar.put(59, 1);
+        soFar.put(60, 0);
+        soFar.put(61, 0);
+        soFar.put(62, 1);
+        soFar.put(65, 1);
+        soFar.put(66, 0);
+        soFar.put(67, 0);
+        soFar.put(68, 0);
+        soFar.put(69, 0);
+        soFar.put(70, 1);
+        soFar.put(71, 1);
+        soFar.put(72, 2);
+        soFar.put(75, 1);
+        soFar.put(76, 0);
+        soFar.put(77, 0);
+        soFar.put(78, 0);
+        soFar.put(79, 0);
+        soFar.put(85, 1);
+        soFar.put(86, 0);
+        soFar.put(87, 0);
+        soFar.put(88, 0);
+        soFar.put(89, 0);
+        soFar.put(95, 1);
+        soFar.put(96, 0);
+        soFar.put(97, 0);
+        soFar.put(98, 0);
+        soFar.put(99, 0);
+
+        long[] plan = Minesweeper.plan(100, 7, 18, 35, 39, 44, 49, 54, 63, 81, 84);
 
         assertTrue(minesweeper.matches(soFar,plan));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNonSquareBoard() {
+        Minesweeper minesweeper = new Minesweeper(16, 30, 99, new SplittableRandom(16));
+        assertEquals(480, minesweeper.getDimTotal());
+        assertEquals(99, Arrays.stream(minesweeper.minePositions).map(Long::bitCount).sum());
+
+        int pos = minesweeper.getPos(15, 29);
+        assertEquals(479, pos);
+        assertArrayEquals(new int[]{minesweeper.getPos(14, 28), minesweeper.getPos(14, 29), minesweeper.getPos(15, 28)},
+                minesweeper.adjacent(pos));
+
+        pos = minesweeper.getPos(1, 0);
+        assertArrayEquals(new int[]{0, 1, 31, 60, 61}, minesweeper.adjacent(pos));
+    }
+
+    @Test
+    public void testSeededInit() {
+        Minesweeper a = new Minesweeper(16, 30, 99, new SplittableRandom(7));
+        Minesweeper b = new Minesweeper(16, 30, 99, new SplittableRandom(7));
+        assertArrayEquals(a.minePositions, b.minePositions);
+
+        RevealedState revealed = new RevealedState(16 * 30);
+        revealed.put(0, -1);
+        revealed.put(1, 2);
+        long[] plan = Minesweeper.init(16, 30, 99, revealed, new SplittableRandom(7));
+        assertEquals(99, Arrays.stream(plan).map(Long::bitCount).sum());
+        assertTrue(Minesweeper.test(0, plan));
+        assertFalse(Minesweeper.test(1, plan));
+    }
+
+    @Test
+    void testReveal() {
+        // mines on the last column, so opening the corner clears the first four columns
+        Minesweeper minesweeper = new Minesweeper(5, 5, 5, new int[]{4, 9, 14, 19, 24});
+        long[] opened = new long[1];
+        Minesweeper.Reveal reveal = minesweeper.reveal(0, opened);
+        assertEquals(20, reveal.size());
+        assertFalse(reveal.isMine());
+        Map<Integer, Integer> revealed = reveal.toMap();
+        assertEquals(0, (int) revealed.get(0));
+        assertEquals(2, (int) revealed.get(3));
+        assertEquals(3, (int) revealed.get(8));
+        assertFalse(revealed.containsKey(4));
+        assertEquals(20, Long.bitCount(opened[0]));
+
+        assertEquals(0, minesweeper.reveal(12, opened).size());
+        Minesweeper.Reveal mine = minesweeper.reveal(4, opened);
+        assertTrue(mine.isMine());
+        assertEquals(1, mine.size());
+    }
+
+    @Test
+    void testRevealLargeRegion() {
+        Minesweeper minesweeper = new Minesweeper(500, 500, 1, new int[]{0});
+        long[] opened = new long[Minesweeper.words(minesweeper.getDimTotal())];
+        assertEquals(500 * 500 - 1, minesweeper.reveal(500 * 500 - 1, opened).size());
+    }
+
+    @Test
+    void testNeighborTable() {
+        Minesweeper minesweeper = new Minesweeper(4, 7, 6, new SplittableRandom(4));
+        int dimX = minesweeper.getDimX();
+        int dimY = minesweeper.getDimY();
+        assertEquals(minesweeper.getDimTotal() + 1, minesweeper.neighborOffsets.length);
+        for (int pos = 0; pos < minesweeper.getDimTotal(); pos++) {
+            // the boxes around pos, row by row
+            int[] expected = new int[8];
+            int cnt = 0;
+            int mines = 0;
+            for (int x = pos / dimY - 1; x <= pos / dimY + 1; x++) {
+                for (int y = pos % dimY - 1; y <= pos % dimY + 1; y++) {
+                    int adj = x * dimY + y;
+                    if (x >= 0 && x < dimX && y >= 0 && y < dimY && adj != pos) {
+                        expected[cnt++] = adj;
+                        mines += Minesweeper.test(adj, minesweeper.minePositions) ? 1 : 0;
+                    }
+                }
+            }
+            assertArrayEquals(Arrays.copyOf(expected, cnt), Arrays.copyOfRange(minesweeper.neighbors,
+                    minesweeper.neighborOffsets[pos], minesweeper.neighborOffsets[pos + 1]));
+            int number = Minesweeper.test(pos, minesweeper.minePositions) ? -1 : mines;
+            assertEquals(number, minesweeper.getNumberOfAdjacentMines(pos));
+            assertEquals(number, minesweeper.getNumberOfAdjacentMines(pos, minesweeper.minePositions));
+        }
+    }
+}
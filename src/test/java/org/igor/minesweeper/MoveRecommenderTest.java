@@ -0,0 +1,96 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoveRecommenderTest {
+
+    private Minesweeper minesweeper = Fixtures.board();
+    private MoveRecommender recommender = new MoveRecommender(minesweeper, ForkJoinPool.commonPool(), 4);
+
+    @Test
+    void testEntropy() {
+        assertEquals(0, MoveRecommender.entropy(new double[]{0, 1, 0}), 1e-12);
+        assertEquals(1, MoveRecommender.entropy(new double[]{0.5, 0.5}), 1e-12);
+        assertEquals(2, MoveRecommender.entropy(MoveRecommender.distribution(new double[]{3, 3, 3, 3})), 1e-12);
+    }
+
+    @Test
+    void testDistribution() {
+        // corner 0 has neighbors 1, 5 and 6: 1 is a known mine, 5 is open, 6 is a coin toss
+        RevealedState revealed = new RevealedState(25);
+        revealed.put(1, -1);
+        revealed.put(5, 1);
+        double[] probs = new double[25];
+        probs[6] = 0.5;
+        assertArrayEquals(new double[]{0, 0.5, 0.5, 0}, recommender.distribution(0, revealed, probs), 1e-12);
+    }
+
+    @Test
+    void testSafestFirstThenMostInformative() {
+        double[] probs = new double[25];
+        Arrays.fill(probs, 0.5);
+        probs[24] = 0.1;
+        probs[12] = 0.1;
+        probs[3] = 0;
+        RevealedState revealed = new RevealedState(25);
+        revealed.put(0, 2);
+        List<MoveRecommender.Move> moves = recommender.rank(revealed, probs, null, TimeUnit.SECONDS.toNanos(1));
+        assertEquals(24, moves.size());
+        // a safe box beats any information
+        assertEquals(3, moves.get(0).pos);
+
+        probs[3] = 0.1;
+        moves = recommender.rank(revealed, probs, null, TimeUnit.SECONDS.toNanos(1));
+        // as safe as 24 and 3, but with more neighbors
+        assertEquals(12, moves.get(0).pos);
+        assertTrue(moves.get(0).information > moves.get(1).information);
+        assertEquals(0.5, moves.get(23).safety, 1e-12);
+    }
+
+    @Test
+    void testNoBudget() {
+        double[] probs = new double[25];
+        Arrays.fill(probs, 0.5);
+        probs[7] = 0.2;
+        List<MoveRecommender.Move> moves = recommender.rank(new RevealedState(25), probs, null, 0);
+        assertEquals(7, moves.get(0).pos);
+        moves.forEach(m -> assertTrue(Double.isNaN(m.information)));
+    }
+
+    @Test
+    void testFromPool() {
+        SamplePool pool = new SamplePool(minesweeper, 1000);
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < 1000; i++) {
+            pool.add(Minesweeper.init(5, 5, 5, null, random));
+        }
+        double[] numbers = pool.numbers(12);
+        assertEquals(9, numbers.length);
+        assertEquals(1000 - pool.count(12), Arrays.stream(numbers).sum(), 1e-9);
+
+        List<MoveRecommender.Move> moves = recommender.rank(new RevealedState(25), pool.marginals(), pool, TimeUnit.SECONDS.toNanos(1));
+        assertEquals(25, moves.size());
+        moves.forEach(m -> assertFalse(Double.isNaN(m.information)));
+    }
+
+    @Test
+    void testSampler() throws Exception {
+        MineSweeperSampler sampler = new MineSweeperSampler(10_000, minesweeper, false, new SplittableRandom(1));
+        sampler.open(0, minesweeper.getNumberOfAdjacentMines(0)).result().get(10, TimeUnit.SECONDS);
+        sampler.open(24, minesweeper.getNumberOfAdjacentMines(24)).result().get(10, TimeUnit.SECONDS);
+        List<MoveRecommender.Move> moves = sampler.recommend(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(23, moves.size());
+        moves.forEach(m -> assertTrue(m.pos != 0 && m.pos != 24));
+        double lowestRisk = 1 - moves.stream().mapToDouble(m -> m.safety).max().getAsDouble();
+        assertTrue(1 - moves.get(0).safety <= lowestRisk * (1 + MoveRecommender.RISK_TOLERANCE) + 1e-12);
+        assertEquals(1, sampler.getMetrics().counter("recommend"));
+    }
+}
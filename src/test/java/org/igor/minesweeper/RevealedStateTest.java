@@ -0,0 +1,65 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RevealedStateTest {
+
+    @Test
+    void testCounts() {
+        RevealedState state = new RevealedState(100);
+        state.put(3, 2);
+        state.put(70, -1);
+        state.put(99, Deducer.SAFE);
+        assertEquals(3, state.size());
+        assertEquals(1, state.getMinesFound());
+        assertEquals(97, state.getAvailable());
+        assertTrue(state.isFlagged(70));
+        assertFalse(state.isOpen(4));
+
+        // a safe box showing its number, a mine turning out not to be one
+        state.put(99, 1);
+        state.put(70, 0);
+        assertEquals(3, state.size());
+        assertEquals(0, state.getMinesFound());
+        assertFalse(state.isFlagged(70));
+        assertEquals(1, state.get(99));
+    }
+
+    @Test
+    void testNext() {
+        RevealedState state = new RevealedState(130);
+        state.putAll(new int[]{129, 0, 64, 63}, new int[]{1, 1, 1, 1});
+        assertArrayEquals(new int[]{0, 63, 64, 129}, state.positions());
+        assertEquals(63, state.next(1));
+        assertEquals(-1, state.next(130));
+    }
+
+    @Test
+    void testMap() {
+        Map<Integer, Integer> revealed = new TreeMap<>();
+        revealed.put(5, 3);
+        revealed.put(7, -1);
+        RevealedState state = RevealedState.of(10, revealed);
+        assertEquals(revealed, state.toMap());
+        assertEquals(state, state.snapshot());
+    }
+
+    @Test
+    void testSnapshot() {
+        RevealedState state = new RevealedState(10);
+        state.put(1, 1);
+        RevealedState snapshot = state.snapshot();
+        state.put(2, -1);
+        assertEquals(1, snapshot.size());
+        assertSame(snapshot, snapshot.snapshot());
+        assertThrows(IllegalStateException.class, () -> snapshot.put(3, 0));
+        RevealedState copy = snapshot.copy();
+        copy.put(3, 0);
+        assertEquals(2, copy.size());
+    }
+}
@@ -0,0 +1,162 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SamplePoolTest {
+
+    private Minesweeper minesweeper = new Minesweeper(8, 8, 10, new SplittableRandom(8));
+
+    @Test
+    void testRetainMatchesPlanByPlan() {
+        List<long[]> plans = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 1000; i++) {
+            plans.add(Minesweeper.init(8, 8, 10, null, random));
+        }
+        SamplePool pool = new SamplePool(minesweeper);
+        pool.addAll(plans);
+        assertEquals(1000, pool.size());
+
+        Map<Integer, Integer> revealed = new TreeMap<>();
+        revealed.put(0, 0);
+        revealed.put(9, 1);
+        revealed.put(27, 2);
+        pool.retain(revealed);
+        plans.removeIf(plan -> !minesweeper.matches(revealed, plan));
+        assertEquals(plans.size(), pool.size());
+
+        double[] marginals = pool.marginals();
+        for (int pos = 0; pos < minesweeper.getDimTotal(); pos++) {
+            final int p = pos;
+            long cnt = plans.stream().filter(plan -> Minesweeper.test(p, plan)).count();
+            assertEquals((double) cnt / plans.size(), marginals[pos], 1e-12);
+        }
+    }
+
+    @Test
+    void testRetainNewBoxesOnly() {
+        SplittableRandom random = new SplittableRandom(2);
+        SamplePool pool = new SamplePool(minesweeper);
+        for (int i = 0; i < 5000; i++) {
+            pool.add(Minesweeper.init(8, 8, 10, null, random));
+        }
+        pool.retain(Fixtures.reveal(minesweeper, 0, 9));
+        Map<Integer, Integer> revealed = Fixtures.reveal(minesweeper, 0, 9, 27, 36);
+
+        // the samples already match the earlier boxes: checking the new ones keeps the same samples
+        SamplePool all = pool.copy();
+        all.retain(revealed);
+        SamplePool newBoxes = pool.copy();
+        newBoxes.retain(new int[]{27, 36}, new int[]{revealed.get(27), revealed.get(36)});
+        assertTrue(newBoxes.size() > 0 && newBoxes.size() < pool.size());
+        assertEquals(all.size(), newBoxes.size());
+        assertArrayEquals(all.marginals(), newBoxes.marginals());
+    }
+
+    @Test
+    void testEmpty() {
+        SamplePool pool = new SamplePool(minesweeper);
+        assertArrayEquals(new double[64], pool.marginals());
+        pool.add(Minesweeper.plan(64, 0), -1);
+        pool.retain(0, Deducer.SAFE);
+        assertEquals(0, pool.size());
+        assertArrayEquals(new double[64], pool.marginals());
+    }
+
+    @Test
+    void testSnapshot() {
+        SamplePool pool = new SamplePool(minesweeper, 64);
+        for (int i = 0; i < 64; i++) {
+            pool.add(Minesweeper.plan(64, i % 2 == 0 ? 0 : 1, 63), i % 4 == 0 ? -1 : 0);
+        }
+        SamplePool snapshot = pool.snapshot();
+        double[] marginals = snapshot.marginals();
+        double[] numbers = snapshot.numbers(8);
+
+        // removing samples, compacting the rest and adding more does not show in the snapshot
+        pool.retain(0, -1);
+        pool.add(Minesweeper.plan(64, 1, 8), 2);
+        pool.add(Minesweeper.plan(64, 9));
+        assertEquals(34, pool.size());
+        assertEquals(64, snapshot.size());
+        assertArrayEquals(marginals, snapshot.marginals());
+        assertArrayEquals(numbers, snapshot.numbers(8));
+        assertEquals(pool.effectiveSampleSize(), pool.snapshot().effectiveSampleSize(), 1e-12);
+
+        assertSame(snapshot, snapshot.snapshot());
+        assertThrows(IllegalStateException.class, () -> snapshot.add(Minesweeper.plan(64, 0)));
+        assertThrows(IllegalStateException.class, () -> snapshot.retain(0, 0));
+    }
+
+    @Test
+    void testCompact() {
+        SamplePool pool = new SamplePool(minesweeper, 64);
+        for (int i = 0; i < 64; i++) {
+            pool.add(Minesweeper.plan(64, i % 2 == 0 ? 0 : 1, 63));
+        }
+        pool.retain(0, -1);
+        assertEquals(32, pool.size());
+
+        pool.add(Minesweeper.plan(64, 5));
+        assertEquals(33, pool.size());
+        assertEquals(64, pool.capacity());
+        assertEquals(32, pool.count(0));
+        assertEquals(0, pool.count(1));
+        assertEquals(32, pool.count(63));
+        assertEquals(1, pool.count(5));
+    }
+
+    @Test
+    void testWeights() {
+        SamplePool pool = new SamplePool(minesweeper, 64);
+        pool.add(Minesweeper.plan(64, 0), Math.log(1));
+        pool.add(Minesweeper.plan(64, 1), Math.log(3));
+        pool.add(Minesweeper.plan(64, 2), Math.log(100));
+        pool.retain(2, Deducer.SAFE);
+        assertEquals(0.25, pool.marginals()[0], 1e-12);
+        assertEquals(0.75, pool.marginals()[1], 1e-12);
+        assertEquals(1.6, pool.effectiveSampleSize(), 1e-12);
+        assertEquals(0.75, MoveRecommender.distribution(pool.numbers(2))[1], 1e-12);
+
+        pool.compact();
+        ByteBuffer buffer = ByteBuffer.allocate((int) pool.bytes());
+        pool.writeTo(buffer);
+        buffer.flip();
+        SamplePool restored = SamplePool.readFrom(minesweeper, buffer);
+        assertArrayEquals(pool.marginals(), restored.marginals(), 1e-12);
+        assertEquals(0.75, restored.marginals()[1], 1e-12);
+    }
+
+    @Test
+    void testBitSlicedCounter() {
+        SplittableRandom random = new SplittableRandom(5);
+        long[][] bitsets = new long[12][3];
+        int[] counts = new int[3 * 64];
+        SamplePool.BitSlicedCounter counter = new SamplePool.BitSlicedCounter(3);
+        for (long[] bitset : bitsets) {
+            for (int w = 0; w < 3; w++) {
+                bitset[w] = random.nextLong();
+                for (int b = 0; b < 64; b++) {
+                    counts[(w << 6) + b] += (int) (bitset[w] >>> b) & 1;
+                }
+            }
+            counter.add(bitset, 0, 3);
+        }
+        long[] mask = new long[3];
+        for (int value = 0; value <= 12; value++) {
+            counter.equal(value, mask, 3);
+            for (int i = 0; i < counts.length; i++) {
+                assertEquals(counts[i] == value, (mask[i >>> 6] & (1L << i)) != 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolverMetricsTest {
+
+    @Test
+    void testHistogram() {
+        SolverMetrics.Histogram h = new SolverMetrics().histogram("h");
+        for (long v = 1; v <= 100; v++) {
+            h.record(v);
+        }
+        assertEquals(100, h.getCount());
+        assertEquals(5050, h.getSum());
+        assertEquals(1, h.getMin());
+        assertEquals(100, h.getMax());
+        assertEquals(63, h.percentile(0.5));
+        assertEquals(100, h.percentile(0.99));
+    }
+
+    @Test
+    void testToJson() {
+        SolverMetrics metrics = new SolverMetrics();
+        metrics.add("a", 3);
+        metrics.record("t", 0);
+        metrics.gauge("g", () -> Double.NaN);
+        assertEquals("{\"counters\":{\"a\":3},\"histograms\":{\"t\":{\"count\":1,\"sum\":0,\"min\":0,\"max\":0,\"mean\":0.0,"
+                + "\"p50\":0,\"p90\":0,\"p99\":0}},\"gauges\":{\"g\":null}}", metrics.toJson());
+    }
+
+    @Test
+    void testSamplerMetrics() throws Exception {
+        Minesweeper minesweeper = Fixtures.board();
+        MineSweeperSampler sampler = new MineSweeperSampler(10_000, minesweeper);
+        Map<Integer, Integer> revealed = Fixtures.reveal(minesweeper, 0, 12, 24);
+        sampler.open(revealed).result().get(10, TimeUnit.SECONDS);
+        SolverMetrics metrics = sampler.getMetrics();
+        assertEquals(1, metrics.counter("open"));
+        assertEquals(1, metrics.counter("regenerate.frontier"));
+        assertEquals(1, metrics.histogram("regenerate.frontier.nanos").getCount());
+        assertEquals(0, metrics.counter("retain.checked"));
+        assertEquals(metrics.counter("retain.kept"), metrics.gauge("pool.size"), 0);
+    }
+}
@@ -0,0 +1,118 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+
+import static org.igor.minesweeper.Fixtures.reveal;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolverServiceTest {
+
+    private Minesweeper minesweeper = Fixtures.board();
+
+    /**
+     * Keeps the only thread of the service busy until the returned latch is counted down
+     */
+    private CountDownLatch block(SolverService.Session session) {
+        CountDownLatch latch = new CountDownLatch(1);
+        session.schedule(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return latch;
+    }
+
+    @Test
+    void testSessionsAreIsolated() throws Exception {
+        try (SolverService service = new SolverService(2, 100)) {
+            SolverService.Session a = service.newSession(minesweeper, 1_000, new SplittableRandom(1), 0);
+            SolverService.Session b = service.newSession(minesweeper, 1_000, new SplittableRandom(2), 0);
+            SolverJob first = a.open(reveal(minesweeper, 0));
+            SolverJob other = b.open(reveal(minesweeper, 0, 12, 24));
+            SolverJob second = a.open(reveal(minesweeper, 12, 24));
+            assertTrue(first.isCancelled());
+            assertFalse(other.isCancelled());
+            double[] exact = new FrontierSolver(minesweeper).solve(reveal(minesweeper, 0, 12, 24));
+            assertArrayEquals(exact, other.result().get(10, TimeUnit.SECONDS), 1e-9);
+            assertArrayEquals(exact, second.result().get(10, TimeUnit.SECONDS), 1e-9);
+            assertEquals(2, service.sessions().size());
+            a.close();
+            assertNull(service.session(a.getId()));
+        }
+    }
+
+    @Test
+    void testGaugesCoverEverySession() throws Exception {
+        try (SolverService service = new SolverService(2, 100)) {
+            Minesweeper strip = Fixtures.strip(70, new SplittableRandom(7));
+            SolverService.Session a = service.newSession(strip, 10_000, new SplittableRandom(1), 0);
+            SolverService.Session b = service.newSession(strip, 20_000, new SplittableRandom(2), 0);
+            a.open(Fixtures.middleRow(strip)).result().get(10, TimeUnit.SECONDS);
+            b.open(Fixtures.middleRow(strip)).result().get(10, TimeUnit.SECONDS);
+            assertEquals(3_000, service.getMetrics().gauge("pool.size"));
+            b.close();
+            assertEquals(1_000, service.getMetrics().gauge("pool.size"));
+        }
+    }
+
+    @Test
+    void testPriority() throws Exception {
+        try (SolverService service = new SolverService(1, 100)) {
+            SolverService.Session low = service.newSession(minesweeper, 1_000, new SplittableRandom(1), 0);
+            SolverService.Session high = service.newSession(minesweeper, 1_000, new SplittableRandom(2), 5);
+            CountDownLatch latch = block(low);
+            List<String> done = new CopyOnWriteArrayList<>();
+            CompletableFuture<?> lowDone = low.open(reveal(minesweeper, 0, 12, 24)).result().thenRun(() -> done.add("low"));
+            CompletableFuture<?> highDone = high.open(reveal(minesweeper, 0, 12, 24)).result().thenRun(() -> done.add("high"));
+            latch.countDown();
+            CompletableFuture.allOf(lowDone, highDone).get(10, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList("high", "low"), done);
+        }
+    }
+
+    @Test
+    void testLowPriorityIsNotStarved() throws Exception {
+        try (SolverService service = new SolverService(1, 1_000)) {
+            SolverService.Session low = service.newSession(minesweeper, 1_000, new SplittableRandom(1), 0);
+            SolverService.Session high = service.newSession(minesweeper, 1_000, new SplittableRandom(2), 1);
+            CountDownLatch latch = block(low);
+            List<String> done = new CopyOnWriteArrayList<>();
+            low.schedule(() -> done.add("low"));
+            for (int i = 0; i < 2 * SolverService.AGING; i++) {
+                high.schedule(() -> done.add("high"));
+            }
+            CountDownLatch finished = new CountDownLatch(1);
+            low.schedule(finished::countDown);
+            latch.countDown();
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+            // the submissions made within AGING of it went first, the later ones waited
+            assertEquals(SolverService.AGING - 1, done.indexOf("low"));
+        }
+    }
+
+    @Test
+    void testBackpressure() throws Exception {
+        try (SolverService service = new SolverService(1, 2)) {
+            SolverService.Session a = service.newSession(minesweeper, 1_000, new SplittableRandom(1), 0);
+            SolverService.Session b = service.newSession(minesweeper, 1_000, new SplittableRandom(2), 0);
+            CountDownLatch latch = block(a);
+            SolverJob queued = a.open(reveal(minesweeper, 0, 12, 24));
+            SolverJob rejected = b.open(reveal(minesweeper, 0, 12, 24));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.result().get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            latch.countDown();
+            assertNotNull(queued.result().get(10, TimeUnit.SECONDS));
+            assertEquals(1, service.getMetrics().counter("service.rejected"));
+            // the rejected move is still known to the session
+            assertNotNull(b.open(reveal(minesweeper, 2)).result().get(10, TimeUnit.SECONDS));
+        }
+    }
+}
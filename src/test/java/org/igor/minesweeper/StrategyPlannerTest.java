@@ -0,0 +1,54 @@
+package org.igor.minesweeper;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.igor.minesweeper.Fixtures.reveal;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StrategyPlannerTest {
+
+    private Minesweeper minesweeper = Fixtures.board();
+
+    @Test
+    void testEstimateNodes() {
+        // one mine over two boxes: the root, two values for the first box, one for the second
+        FrontierSolver.Component component = new FrontierSolver.Component(new int[]{0, 1});
+        component.constraints.add(new FrontierSolver.Constraint(new int[]{0, 1}, 1));
+        assertEquals(5, FrontierSolver.estimateNodes(component, 4, new SplittableRandom(1)), 1e-9);
+    }
+
+    @Test
+    void testPicksAnExactEngineWithinBudget() {
+        StrategyPlanner planner = new StrategyPlanner(minesweeper, 100_000_000L);
+        StrategyPlanner.Plan plan = planner.plan(reveal(minesweeper, 0, 12, 24), 1_000, new SplittableRandom(1));
+        assertNotEquals(StrategyPlanner.Engine.SAMPLING, plan.engine);
+        // C(22, 5)
+        assertEquals(26334, plan.units.get(StrategyPlanner.Engine.EXHAUSTIVE), 1e-9);
+    }
+
+    @Test
+    void testFallsBackToSampling() {
+        StrategyPlanner planner = new StrategyPlanner(minesweeper, 0);
+        assertEquals(StrategyPlanner.Engine.SAMPLING, planner.plan(reveal(minesweeper, 0, 12, 24), 1_000, new SplittableRandom(1)).engine);
+    }
+
+    @Test
+    void testLargeBoardWithoutFrontier() {
+        // C(900, 150) does not fit in a long, the frontier solver has nothing to enumerate
+        StrategyPlanner planner = new StrategyPlanner(new Minesweeper(30, 30, 150, new SplittableRandom(1)), 100_000_000L);
+        StrategyPlanner.Plan plan = planner.plan(Collections.emptyMap(), 1_000, new SplittableRandom(1));
+        assertEquals(StrategyPlanner.Engine.FRONTIER, plan.engine);
+    }
+
+    @Test
+    void testRecord() {
+        StrategyPlanner planner = new StrategyPlanner(minesweeper, 0);
+        double before = planner.getNanosPerUnit(StrategyPlanner.Engine.EXHAUSTIVE);
+        planner.record(StrategyPlanner.Engine.EXHAUSTIVE, 1_000, 1_000_000);
+        assertEquals((1 - StrategyPlanner.ALPHA) * before + StrategyPlanner.ALPHA * 1_000, planner.getNanosPerUnit(StrategyPlanner.Engine.EXHAUSTIVE), 1e-9);
+    }
+}